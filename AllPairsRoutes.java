@@ -0,0 +1,323 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class holds the shortest routes between all pairs of states of a Model.
+ * Since every transition has weight 1 the routes are found by a breadth first search from every state,
+ * the searches are spread over a ForkJoinPool.
+ * For every pair only the distance and the first transition of a shortest route are stored (as ints in flat arrays),
+ * routes are rebuilt on request by following the first transitions.
+ *
+ * The model keeps its routes up to date while it changes: new states and transitions are applied incrementally
+ * (the decrease-only update of dynamic all pairs shortest paths), removed transitions only cause the searches
+ * from the affected states to be redone. The counters show what this cost.
+ * @author Gijs van der Meijde
+ */
+public class AllPairsRoutes {
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+	private static final int SOURCES_PER_TASK = 32;
+
+	private final Model model;
+	private int n, stride;	/* stride = allocated rows and columns, grows geometrically while states are added */
+	private int[] dist;		/* dist[from*stride+to] = length of a shortest route, or UNREACHABLE */
+	private int[] first;	/* first[from*stride+to] = position of the first transition of a shortest route in from's outgoing transitions, or -1 */
+	private int modCount;	/* Modification count of the model these routes belong to */
+
+	private long fullBuilds = 0, insertions = 0, cellsUpdated = 0, removals = 0, sourcesRecomputed = 0;
+
+	/**
+	 * Constructor that computes all shortest routes of the given model on the common ForkJoinPool.
+	 * @param m, the model.
+	 */
+	public AllPairsRoutes(Model m){
+		this.model = m;
+		this.rebuild();
+	}
+
+	/**
+	 * This function recomputes all routes from scratch.
+	 */
+	void rebuild(){
+		this.n = model.stateCount();
+		this.stride = n;
+		if((long) n * n > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException(String.format("Cannot store all routes between %d states.", n));
+		this.dist = new int[n*n];
+		this.first = new int[n*n];
+		ForkJoinPool.commonPool().invoke(new Search(null, 0, n));
+		this.modCount = model.modCount();
+		this.fullBuilds++;
+	}
+
+	/**
+	 * This function returns the length of a shortest route between two states.
+	 * @param from, the index of the state to start.
+	 * @param to, the index of the state to reach.
+	 * @return the amount of transitions on the route, or UNREACHABLE.
+	 */
+	public int distance(int from, int to){
+		return dist[from*stride+to];
+	}
+
+	/**
+	 * This function returns the first transition of a shortest route between two states.
+	 * @param from, the index of the state to start.
+	 * @param to, the index of the state to reach.
+	 * @return the position of the transition in from's outgoing transitions, or -1 if to is from or cannot be reached.
+	 */
+	public int firstTransition(int from, int to){
+		return first[from*stride+to];
+	}
+
+	/**
+	 * This function rebuilds a shortest route between two states.
+	 * @param from, the index of the state to start.
+	 * @param to, the index of the state to reach.
+	 * @return the transitions of the route (empty if from is to), or null if to cannot be reached.
+	 */
+	public List<Transition> route(int from, int to){
+		if(dist[from*stride+to] == UNREACHABLE)
+			return null;
+		List<Transition> route = new ArrayList<Transition>(dist[from*stride+to]);
+		for(int s = from; s != to; ){
+			int i = first[s*stride+to];
+			route.add(model.transition(s, i));
+			s = model.target(s, i);
+		}
+		return route;
+	}
+
+	/**
+	 * @return the amount of states the routes were computed for.
+	 */
+	public int size(){
+		return n;
+	}
+
+	/**
+	 * @return true if the model was changed in a way these routes were not updated for.
+	 */
+	public boolean isStale(){
+		return modCount != model.modCount();
+	}
+
+	/**
+	 * @return the amount of times all routes were computed from scratch.
+	 */
+	public long fullBuilds(){
+		return fullBuilds;
+	}
+
+	/**
+	 * @return the amount of transitions that were added incrementally.
+	 */
+	public long insertions(){
+		return insertions;
+	}
+
+	/**
+	 * @return the amount of (from, to) pairs that got a shorter route through an incrementally added transition.
+	 */
+	public long cellsUpdated(){
+		return cellsUpdated;
+	}
+
+	/**
+	 * @return the amount of times transitions were removed (by filtering the model).
+	 */
+	public long removals(){
+		return removals;
+	}
+
+	/**
+	 * @return the amount of states whose routes were searched again after transitions were removed.
+	 */
+	public long sourcesRecomputed(){
+		return sourcesRecomputed;
+	}
+
+	/*--------------------|
+	|  MODEL NOTIFICATION |
+	|--------------------*/
+
+	/**
+	 * This function adds a new, unconnected state, the rows and columns grow geometrically.
+	 * @param modCount, the modification count of the model after adding the state.
+	 */
+	void stateAdded(int modCount){
+		if(!sync(modCount))
+			return;
+		if(n == stride){
+			int newStride = Math.max(4, stride*2);
+			if((long) newStride * newStride > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException(String.format("Cannot store all routes between %d states.", n+1));
+			int[] newDist = new int[newStride*newStride], newFirst = new int[newStride*newStride];
+			for(int s = 0; s < n; s++){
+				System.arraycopy(dist, s*stride, newDist, s*newStride, n);
+				System.arraycopy(first, s*stride, newFirst, s*newStride, n);
+			}
+			dist = newDist;
+			first = newFirst;
+			stride = newStride;
+		}
+		for(int s = 0; s < n; s++){
+			dist[s*stride+n] = UNREACHABLE;
+			first[s*stride+n] = -1;
+		}
+		Arrays.fill(dist, n*stride, n*stride+n+1, UNREACHABLE);
+		Arrays.fill(first, n*stride, n*stride+n+1, -1);
+		dist[n*stride+n] = 0;
+		n++;
+	}
+
+	/**
+	 * This function adds a transition: every pair (x, y) with a shorter route x -> from -> to -> y gets that route.
+	 * @param from, the index of the origin state.
+	 * @param i, the position of the new transition in from's outgoing transitions.
+	 * @param modCount, the modification count of the model after adding the transition.
+	 */
+	void transitionAdded(int from, int i, int modCount){
+		if(!sync(modCount))
+			return;
+		insertions++;
+		int to = model.target(from, i);
+		if(dist[from*stride+to] <= 1)
+			return;
+		//Row 'to' and column 'from' cannot get shorter through the new transition, so they can be read while updating.
+		int[] reach = new int[n];
+		int reached = 0;
+		for(int y = 0; y < n; y++)
+			if(dist[to*stride+y] != UNREACHABLE)
+				reach[reached++] = y;
+		for(int x = 0; x < n; x++){
+			int dx = dist[x*stride+from];
+			if(dx == UNREACHABLE)
+				continue;
+			int hop = x == from ? i : first[x*stride+from];
+			for(int r = 0; r < reached; r++){
+				int y = reach[r], d = dx + 1 + dist[to*stride+y];
+				if(d < dist[x*stride+y]){
+					dist[x*stride+y] = d;
+					first[x*stride+y] = hop;
+					cellsUpdated++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function handles removed transitions, the searches are redone from every state that had a removed transition on one
+	 * of its shortest routes, or that lost one of its own transitions (which moves the positions of its other transitions).
+	 * If more than half of the states are affected, all routes are computed again.
+	 * @param from, the origin state indices of the removed transitions.
+	 * @param to, the goal state indices of the removed transitions.
+	 * @param count, the amount of removed transitions.
+	 * @param modCount, the modification count of the model after removing the transitions.
+	 */
+	void transitionsRemoved(int[] from, int[] to, int count, int modCount){
+		if(!sync(modCount))
+			return;
+		removals++;
+		boolean[] affected = new boolean[n];
+		int sources = 0;
+		for(int e = 0; e < count; e++)
+			if(!affected[from[e]]){
+				affected[from[e]] = true;
+				sources++;
+			}
+		for(int x = 0; x < n; x++){
+			if(affected[x])
+				continue;
+			int row = x*stride;
+			for(int e = 0; e < count && !affected[x]; e++){
+				int du = dist[row+from[e]];
+				if(du != UNREACHABLE && du + 1 == dist[row+to[e]]){
+					affected[x] = true;
+					sources++;
+				}
+			}
+		}
+		if(sources*2 > n){
+			rebuild();
+			return;
+		}
+		int[] list = new int[sources];
+		for(int x = 0, k = 0; x < n; x++)
+			if(affected[x])
+				list[k++] = x;
+		ForkJoinPool.commonPool().invoke(new Search(list, 0, sources));
+		sourcesRecomputed += sources;
+	}
+
+	/**
+	 * This function checks that the routes were up to date before the change with the given modification count.
+	 * If they were not, all routes are computed again (which already includes the change).
+	 * @return true if the change still needs to be applied.
+	 */
+	private boolean sync(int modCount){
+		if(this.modCount == modCount - 1){
+			this.modCount = modCount;
+			return true;
+		}
+		rebuild();
+		return false;
+	}
+
+	/**
+	 * This function fills row source of dist and first with a breadth first search.
+	 * @param source, the state to search from.
+	 * @param queue, scratch array of at least n elements.
+	 */
+	private void search(int source, int[] queue){
+		int row = source*stride;
+		Arrays.fill(dist, row, row+n, UNREACHABLE);
+		Arrays.fill(first, row, row+n, -1);
+		dist[row+source] = 0;
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		while(head < tail){
+			int s = queue[head++], d = dist[row+s] + 1;
+			for(int i = 0; i < model.outDegree(s); i++){
+				int t = model.target(s, i);
+				if(dist[row+t] == UNREACHABLE){
+					dist[row+t] = d;
+					first[row+t] = s == source ? i : first[row+s];
+					queue[tail++] = t;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Task that searches from a range of sources (indices into a list of sources, or states if the list is null),
+	 * splitting the range while it is large.
+	 */
+	private class Search extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] sources;
+		private final int from, to;
+
+		Search(int[] sources, int from, int to){
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute(){
+			if(to - from > SOURCES_PER_TASK){
+				int mid = (from + to) >>> 1;
+				invokeAll(new Search(sources, from, mid), new Search(sources, mid, to));
+				return;
+			}
+			int[] queue = new int[n];
+			for(int k = from; k < to; k++)
+				search(sources == null ? k : sources[k], queue);
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package convertion.model;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import convertion.model.Matrix.Coord;
+
+/**
+ * This class is a matrix of bits, stored row-major in one flat long[] with 64 cells per word, so it takes 1/8 byte per cell.
+ * It has the same functions as Matrix, where a cell without a value (null or false in a Matrix) is a cleared bit.
+ * Rows are whole words, so operations on rows (filter, floydWarshall) handle 64 cells per instruction.
+ * Rows and columns are allocated with spare capacity, so growing the matrix one row or column at a time takes amortised constant time per cell.
+ * @author Gijs van der Meijde
+ */
+public class BitMatrix {
+	private static final int PARALLEL_ROWS = 1024;	/* Rows per task in floydWarshall */
+	private static final int PRODUCT_ROWS = 64;	/* Rows per task in multiply */
+	private static final int TILE_WORDS = 1 << 15;	/* Words (256KB) of the right matrix that multiply keeps in L2 */
+
+	private long[] data = new long[0];
+	private int rows = 0, columns = 0, stride = 0;	/* stride = allocated words per row, data.length / stride = allocated rows */
+
+	/**
+	 * Default constructor for an empty matrix.
+	 */
+	public BitMatrix(){
+
+	}
+
+	/**
+	 * Constructor that initializes a matrix of given sizes with cleared bits.
+	 * @param columns, amount of columns.
+	 * @param rows, amount of rows.
+	 */
+	public BitMatrix(int columns, int rows){
+		this.increase(rows, columns);
+	}
+
+	/**
+	 * Constructor that initializes a square matrix of given size with cleared bits.
+	 * @param size, amount of rows and columns of matrix.
+	 */
+	public BitMatrix(int size){
+		this(size, size);
+	}
+
+	/**
+	 * This function converts a matrix, every cell that is not null or false becomes a set bit.
+	 * @param m, the matrix to convert.
+	 * @return the new matrix.
+	 */
+	public static BitMatrix of(Matrix<?> m){
+		BitMatrix b = new BitMatrix(m.getColumnAmount(), m.getRowAmount());
+		List<? extends List<?>> columns = m.getInnerList();
+		for(int j = 0; j < b.columns; j++){
+			List<?> column = columns.get(j);
+			for(int i = 0; i < b.rows; i++){
+				Object value = column.get(i);
+				if(value != null && !Boolean.FALSE.equals(value))
+					b.data[i*b.stride + (j >>> 6)] |= 1L << j;
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * This function converts the matrix to a Matrix, set bits become true and cleared bits null.
+	 * @return the new matrix.
+	 */
+	public Matrix<Boolean> toMatrix(){
+		Matrix<Boolean> m = new Matrix<Boolean>(columns, rows);
+		List<List<Boolean>> inner = m.getInnerList();
+		for(int i = 0; i < rows; i++)
+			for(int j = 0; j < columns; j++)
+				if(get(i, j))
+					inner.get(j).set(i, Boolean.TRUE);
+		return m;
+	}
+
+	/**
+	 * This function sets all fields in the matrix to the given value.
+	 * @param value, the value to initialize the matrix with.
+	 * @return the current matrix.
+	 */
+	public BitMatrix initialize(boolean value){
+		for(int i = 0; i < rows; i++){
+			int row = i*stride;
+			Arrays.fill(data, row, row + stride, 0L);
+			if(value){
+				Arrays.fill(data, row, row + (columns >>> 6), -1L);
+				if((columns & 63) != 0)
+					data[row + (columns >>> 6)] = (1L << columns) - 1;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * This function retrieves the value on the given index.
+	 * @param row, the row index.
+	 * @param column, the column index.
+	 * @return true if the bit is set.
+	 */
+	public boolean get(int row, int column){
+		if(row >= rows || column >= columns || row < 0 || column < 0)
+			throw new IndexOutOfBoundsException(String.format("Index %dx%d out of bounds. Matrix size is %dx%d.", row, column, rows, columns));
+		return (data[row*stride + (column >>> 6)] & (1L << column)) != 0;
+	}
+
+	public boolean get(Coord<Integer,Integer> coordinate){
+		return this.get(coordinate.fst(), coordinate.snd());
+	}
+
+	/**
+	 * This function sets the given value on the given index, the matrix grows if the index is outside of it.
+	 * @param value, the value to set.
+	 * @param row, the row index.
+	 * @param column, the column index.
+	 * @return the current matrix.
+	 */
+	public BitMatrix set(boolean value, int row, int column){
+		if(row >= rows || column >= columns)
+			this.increase(Math.max(0, row+1-rows), Math.max(0, column+1-columns));
+		if(value)
+			data[row*stride + (column >>> 6)] |= 1L << column;
+		else
+			data[row*stride + (column >>> 6)] &= ~(1L << column);
+		return this;
+	}
+
+	public BitMatrix set(boolean value, Coord<Integer,Integer> coordinate){
+		return this.set(value, coordinate.fst(), coordinate.snd());
+	}
+
+	public int getRowAmount(){
+		return rows;
+	}
+
+	public int getColumnAmount(){
+		return columns;
+	}
+
+	/**
+	 * This function returns a view of the words of a row, column j is bit j%64 of word j/64. Writing to the view writes to the matrix,
+	 * bits after the last column must stay cleared. The view is no longer backed by the matrix after the matrix grew beyond its capacity.
+	 * @param row, the row index.
+	 * @return the row.
+	 */
+	public LongBuffer getRow(int row){
+		if(row >= rows || row < 0)
+			throw new IndexOutOfBoundsException(String.format("Row %d out of bounds. Matrix has %d rows.", row, rows));
+		return LongBuffer.wrap(data, row*stride, (columns + 63) >>> 6).slice();
+	}
+
+	/**
+	 * @param column, the column index.
+	 * @return a copy of the column.
+	 */
+	public boolean[] getColumn(int column){
+		boolean[] values = new boolean[rows];
+		for(int i = 0; i < rows; i++)
+			values[i] = (data[i*stride + (column >>> 6)] & (1L << column)) != 0;
+		return values;
+	}
+
+	/**
+	 * @return the amount of set bits.
+	 */
+	public long count(){
+		long count = 0;
+		for(long word : data)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * This function increases the matrix size and initializes the new fields with cleared bits.
+	 * @param rows, the amount of rows to increase (>=0).
+	 * @param columns, the amount of columns to increase (>=0).
+	 * @return the current matrix.
+	 */
+	public BitMatrix increase(int rows, int columns){
+		if(rows < 0 || columns < 0)
+			return this;
+		int newRows = this.rows + rows, newColumns = this.columns + columns;
+		int words = (newColumns + 63) >>> 6;
+		int capacity = stride == 0 ? 0 : data.length / stride;
+		if(words > stride || newRows > capacity){
+			int newStride = words > stride ? Math.max(words, stride*2) : stride;
+			int newCapacity = newRows > capacity ? Math.max(newRows, capacity*2) : capacity;
+			if((long) newStride * newCapacity > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException(String.format("Matrix of %dx%d is too large.", newRows, newColumns));
+			long[] grown = new long[newStride * newCapacity];
+			for(int i = 0; i < this.rows; i++)
+				System.arraycopy(data, i*stride, grown, i*newStride, stride);
+			this.data = grown;
+			this.stride = newStride;
+		}
+		this.rows = newRows;
+		this.columns = newColumns;
+		return this;
+	}
+
+	/**
+	 * This function increases the matrix size on both axises by the given size.
+	 * @param size, the amount of rows and columns to increase.
+	 * @return the current matrix.
+	 */
+	public BitMatrix increase(int size){
+		return this.increase(size, size);
+	}
+
+	/**
+	 * @return a copy of the current matrix, without spare capacity.
+	 */
+	public BitMatrix copy(){
+		BitMatrix copy = new BitMatrix(columns, rows);
+		for(int i = 0; i < rows; i++)
+			System.arraycopy(data, i*stride, copy.data, i*copy.stride, copy.stride);
+		return copy;
+	}
+
+	/**
+	 * This function filters the matrix with a mask, bits that are not set in the mask are cleared.
+	 * @param mask, the mask, a matrix of the same size.
+	 * @param copy, weather the matrix needs to be copied or modified.
+	 * @return the 'new' matrix.
+	 */
+	public BitMatrix filter(BitMatrix mask, boolean copy){
+		if(mask.rows != rows || mask.columns != columns)
+			throw new IllegalArgumentException(String.format("Mask of %dx%d does not match matrix of %dx%d.", mask.rows, mask.columns, rows, columns));
+		BitMatrix m = copy ? this.copy() : this;
+		int words = (columns + 63) >>> 6;
+		for(int i = 0; i < rows; i++)
+			for(int w = 0; w < words; w++)
+				m.data[i*m.stride + w] &= mask.data[i*mask.stride + w];
+		return m;
+	}
+
+	public BitMatrix filter(BitMatrix mask){
+		return filter(mask, false);
+	}
+
+	/**
+	 * This function applies Warshall's algorithm to the matrix, see floydWarshall(ForkJoinPool).
+	 * @return the transitive closure.
+	 */
+	public BitMatrix floydWarshall(){
+		return floydWarshall(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function applies Warshall's algorithm to the matrix, the boolean version of Floyd-Warshall:
+	 * for every k, every row with bit k set is or'ed with row k, one word at a time.
+	 * The rows of one k are updated in parallel, row k itself only changes if bit (k,k) is set, and then it is or'ed with itself.
+	 * @param pool, the pool to update the rows on.
+	 * @return the transitive closure, bit (i,j) is set if there is a path of one or more steps from i to j.
+	 */
+	public BitMatrix floydWarshall(ForkJoinPool pool){
+		if(rows != columns)
+			throw new IllegalStateException("Square matrix is needed for this operation");
+		BitMatrix closure = this.copy();
+		for(int k = 0; k < rows; k++){
+			if(rows <= PARALLEL_ROWS)
+				closure.warshall(k, 0, rows);
+			else
+				pool.invoke(closure.new Warshall(k, 0, rows));
+		}
+		return closure;
+	}
+
+	/**
+	 * This function or's row k into the rows from start to end that have bit k set.
+	 */
+	private void warshall(int k, int start, int end){
+		int kRow = k*stride, kWord = k >>> 6, words = (columns + 63) >>> 6;
+		long kBit = 1L << k;
+		for(int i = start; i < end; i++){
+			int row = i*stride;
+			if((data[row + kWord] & kBit) == 0)
+				continue;
+			for(int w = 0; w < words; w++)
+				data[row + w] |= data[kRow + w];
+		}
+	}
+
+	/**
+	 * Task that updates a range of rows for one k.
+	 */
+	private class Warshall extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int k, start, end;
+
+		Warshall(int k, int start, int end){
+			this.k = k;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute(){
+			if(end - start <= PARALLEL_ROWS){
+				warshall(k, start, end);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new Warshall(k, start, middle), new Warshall(k, middle, end));
+		}
+	}
+
+	/**
+	 * This function multiplies the matrix with another matrix over the boolean semiring (or, and), see multiply(BitMatrix, ForkJoinPool).
+	 * @param m, the right matrix.
+	 * @return the product.
+	 */
+	public BitMatrix multiply(BitMatrix m){
+		return multiply(m, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function multiplies the matrix with another matrix over the boolean semiring (or, and):
+	 * row i of the product is the or of the rows k of m for which bit (i,k) is set, one word at a time.
+	 * The rows of m are used in tiles that fit in L2, and blocks of rows of the product are computed in parallel.
+	 * @param m, the right matrix, with as many rows as this matrix has columns.
+	 * @param pool, the pool to compute the row blocks on.
+	 * @return the product, bit (i,j) is set if there is a k with (i,k) set in this matrix and (k,j) set in m.
+	 */
+	public BitMatrix multiply(BitMatrix m, ForkJoinPool pool){
+		if(columns != m.rows)
+			throw new IllegalArgumentException(String.format("Cannot multiply a %dx%d matrix with a %dx%d matrix.", rows, columns, m.rows, m.columns));
+		BitMatrix product = new BitMatrix(m.columns, rows);
+		Product task = new Product(m, product, 0, rows);
+		if((long) rows * m.rows * product.stride < TILE_WORDS)
+			task.multiply();
+		else
+			pool.invoke(task);
+		return product;
+	}
+
+	public BitMatrix power(int k){
+		return power(k, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function raises the matrix to a power by repeated squaring, so it takes O(log k) multiplications.
+	 * For an adjacency matrix bit (i,j) of the k'th power is set if j can be reached from i in exactly k steps.
+	 * @param k, the power (>=0), the power 0 is the identity.
+	 * @param pool, the pool to compute the row blocks on.
+	 * @return the power.
+	 */
+	public BitMatrix power(int k, ForkJoinPool pool){
+		if(rows != columns)
+			throw new IllegalStateException("Square matrix is needed for this operation");
+		if(k < 0)
+			throw new IllegalArgumentException(String.format("Power %d is negative.", k));
+		BitMatrix result = null, square = this;
+		while(k > 0){
+			if((k & 1) != 0)
+				result = result == null ? square.copy() : result.multiply(square, pool);
+			k >>>= 1;
+			if(k > 0)
+				square = square.multiply(square, pool);
+		}
+		return result == null ? identity(rows) : result;
+	}
+
+	/**
+	 * @param size, the amount of rows and columns.
+	 * @return the matrix with only the diagonal set.
+	 */
+	public static BitMatrix identity(int size){
+		BitMatrix identity = new BitMatrix(size);
+		for(int i = 0; i < size; i++)
+			identity.data[i*identity.stride + (i >>> 6)] |= 1L << i;
+		return identity;
+	}
+
+	/**
+	 * Task that computes a range of rows of a product, split into blocks of PRODUCT_ROWS rows.
+	 */
+	private class Product extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final BitMatrix m, product;
+		private final int start, end;
+
+		Product(BitMatrix m, BitMatrix product, int start, int end){
+			this.m = m;
+			this.product = product;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute(){
+			if(end - start <= PRODUCT_ROWS){
+				multiply();
+				return;
+			}
+			int middle = start + (((end - start) / PRODUCT_ROWS + 1) >>> 1) * PRODUCT_ROWS;
+			invokeAll(new Product(m, product, start, middle), new Product(m, product, middle, end));
+		}
+
+		/**
+		 * This function computes the rows from start to end, for one tile of rows of m (64 rows, one word of this matrix, at a time) after the other.
+		 */
+		void multiply(){
+			long[] c = product.data, b = m.data;
+			int words = (m.columns + 63) >>> 6, tile = Math.max(1, TILE_WORDS / Math.max(1, words) >>> 6);
+			int aWords = (columns + 63) >>> 6;
+			for(int w0 = 0; w0 < aWords; w0 += tile){
+				int w1 = Math.min(aWords, w0 + tile);
+				for(int i = start; i < end; i++){
+					int aRow = i*stride, cRow = i*product.stride;
+					for(int w = w0; w < w1; w++){
+						long bits = data[aRow + w];
+						while(bits != 0){
+							int bRow = ((w << 6) + Long.numberOfTrailingZeros(bits)) * m.stride;
+							bits &= bits - 1;
+							for(int x = 0; x < words; x++)
+								c[cRow + x] |= b[bRow + x];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pretty printer for matrix.
+	 * @return pretty printed matrix.
+	 */
+	public String toString(){
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < rows; i++){
+			for(int j = 0; j < columns; j++)
+				s.append(get(i, j) ? '1' : '-').append(' ');
+			s.append('\n');
+		}
+		return s.toString();
+	}
+
+	/*--------------------|
+	|  Package access     |
+	|--------------------*/
+
+	long[] data(){
+		return data;
+	}
+
+	int stride(){
+		return stride;
+	}
+}
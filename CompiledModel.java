@@ -0,0 +1,193 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class is a frozen, compiled form of a Model that is meant for fast execution of input words.
+ * Inputs and outputs are interned to ints and the model is stored as a dense Mealy transition table,
+ * where next[state * |inputs| + input] is the next state and out[state * |inputs| + input] the produced output.
+ * Undefined transitions are stored as -1 in both tables.
+ * If a state has multiple transitions with the same input, the first one added to the model is used.
+ * Changes to the model after compilation are not reflected in the compiled model.
+ * @author Gijs van der Meijde
+ */
+public class CompiledModel {
+	private final SymbolTable inputs = new SymbolTable(), outputs = new SymbolTable();
+	private final String[] stateNames;
+	private final int states, width, start;
+	private final int[] next, out;
+	private final Transition[] transitions;
+	
+	/**
+	 * Constructor that compiles the given model.
+	 * The input alphabet is the model's functions set plus the inputs of its transitions (functions is public and may miss some), in sorted order.
+	 * @param m, the model to compile.
+	 */
+	public CompiledModel(Model m){
+		TreeSet<String> alphabet = new TreeSet<String>(m.functions);
+		for(int s = 0; s < m.stateCount(); s++)
+			for(int i = 0; i < m.outDegree(s); i++)
+				alphabet.add(m.transition(s, i).function());
+		for(String f : alphabet)
+			inputs.intern(f);
+		this.states = m.stateCount();
+		this.width = Math.max(inputs.size(), 1);
+		if((long) states * width > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(String.format("Model with %d states and %d inputs is too large to compile.", states, width));
+		this.start = m.startState() == null ? -1 : m.startIndex();
+		this.stateNames = new String[states];
+		this.next = new int[states * width];
+		this.out = new int[states * width];
+		this.transitions = new Transition[states * width];
+		Arrays.fill(next, -1);
+		Arrays.fill(out, -1);
+		for(int s = 0; s < states; s++){
+			stateNames[s] = m.stateName(s);
+			for(int i = 0; i < m.outDegree(s); i++){
+				Transition t = m.transition(s, i);
+				int cell = s * width + inputs.get(t.function());
+				if(next[cell] == -1){
+					next[cell] = m.target(s, i);
+					out[cell] = outputs.intern(t.output() == null ? "" : t.output());
+					transitions[cell] = t;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This function takes a single step in the model.
+	 * @param state, the index of the state to step from.
+	 * @param input, the id of the input.
+	 * @return the index of the next state, or -1 if the transition is undefined.
+	 */
+	public int step(int state, int input){
+		if(state < 0 || input < 0)
+			return -1;
+		return next[state * width + input];
+	}
+	
+	/**
+	 * This function returns the output of a single step in the model.
+	 * @param state, the index of the state to step from.
+	 * @param input, the id of the input.
+	 * @return the id of the output, or -1 if the transition is undefined.
+	 */
+	public int output(int state, int input){
+		if(state < 0 || input < 0)
+			return -1;
+		return out[state * width + input];
+	}
+	
+	/**
+	 * This function returns the transition of the original model that is taken in a single step.
+	 * @param state, the index of the state to step from.
+	 * @param input, the id of the input.
+	 * @return the transition, or null if the transition is undefined.
+	 */
+	public Transition transition(int state, int input){
+		if(state < 0 || input < 0)
+			return null;
+		return transitions[state * width + input];
+	}
+	
+	/**
+	 * This function runs an encoded word from the start state.
+	 * @param word, the input ids to run.
+	 * @return the index of the reached state, or -1 if the word leaves the model.
+	 */
+	public int run(int[] word){
+		return run(start, word, null);
+	}
+	
+	/**
+	 * This function runs an encoded word from the given state and optionally records the outputs.
+	 * @param state, the index of the state to start at.
+	 * @param word, the input ids to run.
+	 * @param outputs, array of at least word.length to store the output ids in, may be null.
+	 * @return the index of the reached state, or -1 if the word leaves the model (outputs up to that point are recorded).
+	 */
+	public int run(int state, int[] word, int[] outputs){
+		for(int i = 0; i < word.length && state >= 0; i++){
+			if(word[i] < 0)
+				return -1;
+			int cell = state * width + word[i];
+			if(outputs != null)
+				outputs[i] = out[cell];
+			state = next[cell];
+		}
+		return state;
+	}
+	
+	/**
+	 * This function encodes a word of input names to input ids.
+	 * @param word, the input names.
+	 * @return the input ids, unknown inputs are encoded as -1.
+	 */
+	public int[] encode(List<String> word){
+		int[] encoded = new int[word.size()];
+		int i = 0;
+		for(String input : word)
+			encoded[i++] = inputs.get(input);
+		return encoded;
+	}
+	
+	/**
+	 * This function decodes output ids to output names.
+	 * @param outputs, the output ids.
+	 * @param length, the amount of outputs to decode.
+	 * @return the output names.
+	 */
+	public List<String> decodeOutputs(int[] outputs, int length){
+		List<String> decoded = new ArrayList<String>(length);
+		for(int i = 0; i < length; i++)
+			decoded.add(this.outputs.name(outputs[i]));
+		return decoded;
+	}
+	
+	/**
+	 * @return the interned input alphabet.
+	 */
+	public SymbolTable inputs(){
+		return inputs;
+	}
+	
+	/**
+	 * @return the interned output alphabet.
+	 */
+	public SymbolTable outputs(){
+		return outputs;
+	}
+	
+	/**
+	 * @return the amount of states.
+	 */
+	public int stateCount(){
+		return states;
+	}
+	
+	/**
+	 * @return the amount of inputs.
+	 */
+	public int inputCount(){
+		return inputs.size();
+	}
+	
+	/**
+	 * @return the index of the start state, or -1 if the model had no start state.
+	 */
+	public int startState(){
+		return start;
+	}
+	
+	/**
+	 * @param state, the index of a state.
+	 * @return the name the state had in the original model.
+	 */
+	public String stateName(int state){
+		return stateNames[state];
+	}
+}
@@ -0,0 +1,475 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class is an explicit state model checker for CTL formulas (see CtlFormula) over a Model.
+ * The set of states that satisfy a formula is a bitset of longs over the state indices, computed bottom up:
+ * atomic propositions and EX are labelled per word of 64 states, EU is a backward search over the reverse adjacency index
+ * and EG is the greatest fixpoint of f and EX EG f, computed backward by removing states that have no successor left in the set.
+ * All of this takes O(n + m) time per operator for n states and m transitions. On large models the labelling is spread
+ * over the common ForkJoinPool, and the two subformulas of a binary operator are checked in parallel.
+ * The result of every subformula is cached, so a subformula shared between formulas is only checked once.
+ * The checker works on the model as it was when the checker was built: the forward and reverse adjacency are copied into
+ * flat arrays on construction, and later changes to the model are not seen.
+ * @author Gijs van der Meijde
+ */
+public class CtlChecker {
+	private static final int PARALLEL_STATES = 1 << 16, WORDS_PER_TASK = 1 << 10;
+
+	private final Model model;
+	private final int modCount;
+	private final int n, words;
+	private final int[] succStart, succ;	/* succ[succStart[s]..succStart[s+1]) = targets of the transitions from s, in order */
+	private final Transition[] edges;	/* edges[e] = the transition to succ[e] */
+	private final int[] predStart, pred;	/* pred[predStart[t]..predStart[t+1]) = sources of the transitions to t, with multiplicity */
+	private final Map<CtlFormula,long[]> satisfied = new ConcurrentHashMap<CtlFormula,long[]>();
+
+	/**
+	 * Constructor that builds the forward and reverse adjacency index of the current state of the model.
+	 * @param m, the model.
+	 */
+	public CtlChecker(Model m){
+		this.model = m;
+		this.modCount = m.modCount();
+		this.n = m.stateCount();
+		this.words = (n + 63) >>> 6;
+		this.succStart = new int[n+1];
+		for(int s = 0; s < n; s++)
+			succStart[s+1] = succStart[s] + m.outDegree(s);
+		this.succ = new int[succStart[n]];
+		this.edges = new Transition[succStart[n]];
+		this.predStart = new int[n+1];
+		for(int s = 0; s < n; s++){
+			for(int i = 0; i < m.outDegree(s); i++){
+				succ[succStart[s] + i] = m.target(s, i);
+				edges[succStart[s] + i] = m.transition(s, i);
+				predStart[m.target(s, i)+1]++;
+			}
+		}
+		for(int s = 0; s < n; s++)
+			predStart[s+1] += predStart[s];
+		this.pred = new int[predStart[n]];
+		int[] fill = Arrays.copyOf(predStart, n);
+		for(int s = 0; s < n; s++)
+			for(int e = succStart[s]; e < succStart[s+1]; e++)
+				pred[fill[succ[e]]++] = s;
+	}
+
+	/**
+	 * @return the modCount of the model when the checker was built.
+	 */
+	int modCount(){
+		return modCount;
+	}
+
+	/*--------------------|
+	|  Queries            |
+	|--------------------*/
+
+	/**
+	 * @param f, a formula.
+	 * @return true if the start state satisfies the formula.
+	 */
+	public boolean holds(CtlFormula f){
+		return holds(f, model.startState());
+	}
+
+	/**
+	 * @param f, a formula.
+	 * @param state, the name of a state.
+	 * @return true if the state satisfies the formula.
+	 */
+	public boolean holds(CtlFormula f, String state){
+		return get(check(f), index(state));
+	}
+
+	/**
+	 * @param f, a formula.
+	 * @return the names of the states that satisfy the formula.
+	 */
+	public List<String> states(CtlFormula f){
+		long[] set = check(f);
+		List<String> states = new ArrayList<String>();
+		for(int w = 0; w < words; w++)
+			for(long bits = set[w]; bits != 0; bits &= bits - 1)
+				states.add(model.stateName((w << 6) + Long.numberOfTrailingZeros(bits)));
+		return states;
+	}
+
+	/**
+	 * @param f, a formula.
+	 * @return the amount of states that satisfy the formula.
+	 */
+	public int count(CtlFormula f){
+		int count = 0;
+		for(long bits : check(f))
+			count += Long.bitCount(bits);
+		return count;
+	}
+
+	/**
+	 * This function returns a path that shows that a state satisfies a formula:
+	 * EX gives a step to a state that satisfies the subformula, EU a shortest path to a state that satisfies the second subformula
+	 * and EG a path that ends with a transition back to a state on the path, each followed by the witness of the subformula in the last state.
+	 * A transition proposition gives a satisfying transition, and other propositions give an empty path.
+	 * @param f, a formula.
+	 * @param state, the name of a state.
+	 * @return the transitions of the path, or null if the state doesn't satisfy the formula or no single path shows it (for example for AX).
+	 */
+	public List<Transition> witness(CtlFormula f, String state){
+		return witness(f, index(state));
+	}
+
+	/**
+	 * @param f, a formula.
+	 * @return the witness of the formula in the start state, see witness(CtlFormula, String).
+	 */
+	public List<Transition> witness(CtlFormula f){
+		return witness(f, model.startState());
+	}
+
+	/**
+	 * This function returns a path that shows that a state does not satisfy a formula, the witness of its negation.
+	 * For example, a counterexample of AG f is a path to a state that does not satisfy f.
+	 * @param f, a formula.
+	 * @param state, the name of a state.
+	 * @return the transitions of the path, or null if the state satisfies the formula or no single path shows it.
+	 */
+	public List<Transition> counterexample(CtlFormula f, String state){
+		return witness(CtlFormula.not(f), index(state));
+	}
+
+	/**
+	 * @param f, a formula.
+	 * @return the counterexample of the formula in the start state, see counterexample(CtlFormula, String).
+	 */
+	public List<Transition> counterexample(CtlFormula f){
+		return counterexample(f, model.startState());
+	}
+
+	private int index(String state){
+		int s = state == null ? -1 : model.indexOf(state);
+		if(s < 0 || s >= n)
+			throw new IllegalArgumentException(String.format("State %s does not exist!", state));
+		return s;
+	}
+
+	/*--------------------|
+	|  Labelling          |
+	|--------------------*/
+
+	/**
+	 * This function computes the states that satisfy a formula.
+	 * @param f, a formula.
+	 * @return the bitset of the states, bit s of word s/64 is set if state s satisfies the formula. It should not be changed.
+	 */
+	long[] check(CtlFormula f){
+		long[] cached = satisfied.get(f);
+		if(cached != null)
+			return cached;
+		return n < PARALLEL_STATES ? evaluate(f) : ForkJoinPool.commonPool().invoke(new Evaluation(f));
+	}
+
+	private long[] evaluate(CtlFormula f){
+		long[] cached = satisfied.get(f);
+		if(cached != null)
+			return cached;
+		long[] result;
+		switch(f.op){
+		case TRUE:
+			result = new long[words];
+			Arrays.fill(result, -1L);
+			clearTail(result);
+			break;
+		case NOT:
+			result = evaluate(f.left).clone();
+			for(int w = 0; w < words; w++)
+				result[w] = ~result[w];
+			clearTail(result);
+			break;
+		case AND:
+		case OR:{
+			long[][] both = evaluateBoth(f.left, f.right);
+			result = both[0].clone();
+			for(int w = 0; w < words; w++)
+				result[w] = f.op == CtlFormula.Op.AND ? result[w] & both[1][w] : result[w] | both[1][w];
+			break;
+		}
+		case EU:{
+			long[][] both = evaluateBoth(f.left, f.right);
+			result = until(both[0], both[1]);
+			break;
+		}
+		case EG:
+			result = globally(evaluate(f.left));
+			break;
+		default:	//STATE, TRANSITION and EX are labelled per word
+			long[] sub = f.op == CtlFormula.Op.EX ? evaluate(f.left) : null;
+			result = new long[words];
+			if(n < PARALLEL_STATES)
+				label(f, sub, result, 0, words);
+			else
+				new Labelling(f, sub, result, 0, words).invoke();
+		}
+		satisfied.put(f, result);
+		return result;
+	}
+
+	/**
+	 * This function evaluates 2 subformulas, in parallel on large models.
+	 */
+	private long[][] evaluateBoth(CtlFormula f, CtlFormula g){
+		if(n < PARALLEL_STATES || !f.temporal || !g.temporal)
+			return new long[][] {evaluate(f), evaluate(g)};
+		Evaluation task = new Evaluation(f);
+		task.fork();
+		long[] second = evaluate(g);
+		return new long[][] {task.join(), second};
+	}
+
+	/**
+	 * This function labels the states of words [from, to) with an atomic proposition or EX.
+	 * @param sub, the states that satisfy the subformula of EX.
+	 */
+	private void label(CtlFormula f, long[] sub, long[] result, int from, int to){
+		for(int s = from << 6; s < Math.min(n, to << 6); s++){
+			boolean holds = false;
+			if(f.op == CtlFormula.Op.STATE)
+				holds = f.state.test(model.stateName(s));
+			else if(f.op == CtlFormula.Op.EX)
+				for(int e = succStart[s]; e < succStart[s+1] && !holds; e++)
+					holds = get(sub, succ[e]);
+			else
+				for(int e = succStart[s]; e < succStart[s+1] && !holds; e++)
+					holds = f.transition.test(edges[e]);
+			if(holds)
+				result[s >>> 6] |= 1L << s;
+		}
+	}
+
+	/**
+	 * This function computes E[f U g] with a backward search from the states that satisfy g, through states that satisfy f.
+	 */
+	private long[] until(long[] f, long[] g){
+		long[] result = g.clone();
+		int[] stack = new int[n];
+		int top = 0;
+		for(int w = 0; w < words; w++)
+			for(long bits = g[w]; bits != 0; bits &= bits - 1)
+				stack[top++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+		while(top > 0){
+			int t = stack[--top];
+			for(int i = predStart[t]; i < predStart[t+1]; i++){
+				int s = pred[i];
+				if(get(f, s) && !get(result, s)){
+					result[s >>> 6] |= 1L << s;
+					stack[top++] = s;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * This function computes EG f as the greatest fixpoint of f and EX EG f: every state that satisfies f counts its transitions
+	 * into the set, and states without such transitions are removed from the set backward until no state is left to remove.
+	 */
+	private long[] globally(long[] f){
+		long[] result = f.clone();
+		int[] count = new int[n], stack = new int[n];
+		int top = 0;
+		for(int w = 0; w < words; w++){
+			for(long bits = f[w]; bits != 0; bits &= bits - 1){
+				int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+				for(int e = succStart[s]; e < succStart[s+1]; e++)
+					if(get(f, succ[e]))
+						count[s]++;
+				if(count[s] == 0)
+					stack[top++] = s;
+			}
+		}
+		while(top > 0){
+			int t = stack[--top];
+			result[t >>> 6] &= ~(1L << t);
+			for(int i = predStart[t]; i < predStart[t+1]; i++){
+				int s = pred[i];
+				if(get(result, s) && --count[s] == 0)
+					stack[top++] = s;
+			}
+		}
+		return result;
+	}
+
+	private void clearTail(long[] set){
+		if((n & 63) != 0)
+			set[words-1] &= (1L << n) - 1;
+	}
+
+	private static boolean get(long[] set, int s){
+		return (set[s >>> 6] & (1L << s)) != 0;
+	}
+
+	/*--------------------|
+	|  Witnesses          |
+	|--------------------*/
+
+	private List<Transition> witness(CtlFormula f, int s){
+		if(!get(check(f), s))
+			return null;
+		switch(f.op){
+		case TRUE:
+		case STATE:
+			return new ArrayList<Transition>();
+		case TRANSITION:
+			for(int e = succStart[s]; e < succStart[s+1]; e++)
+				if(f.transition.test(edges[e]))
+					return new ArrayList<Transition>(Collections.singletonList(edges[e]));
+			return null;
+		case AND:
+			if(!f.left.temporal)
+				return witness(f.right, s);
+			if(!f.right.temporal)
+				return witness(f.left, s);
+			return null;
+		case OR:{
+			List<Transition> path = get(check(f.left), s) ? witness(f.left, s) : null;
+			return path != null || !get(check(f.right), s) ? path : witness(f.right, s);
+		}
+		case NOT:
+			CtlFormula g = f.left;
+			if(!g.temporal)
+				return new ArrayList<Transition>();
+			if(g.op == CtlFormula.Op.AND)	//De Morgan
+				return witness(CtlFormula.or(CtlFormula.not(g.left), CtlFormula.not(g.right)), s);
+			if(g.op == CtlFormula.Op.OR)
+				return witness(CtlFormula.and(CtlFormula.not(g.left), CtlFormula.not(g.right)), s);
+			return null;
+		case EX:{
+			long[] sub = check(f.left);
+			for(int e = succStart[s]; e < succStart[s+1]; e++)
+				if(get(sub, succ[e]))
+					return extend(new ArrayList<Transition>(Collections.singletonList(edges[e])), f.left, succ[e]);
+			return null;
+		}
+		case EU:
+			return untilPath(s, check(f), check(f.right), f.right);
+		case EG:
+			return lasso(s, check(f));
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * This function appends the witness of a formula in the last state of a path, if it has one.
+	 */
+	private List<Transition> extend(List<Transition> path, CtlFormula f, int last){
+		List<Transition> rest = witness(f, last);
+		if(rest != null)
+			path.addAll(rest);
+		return path;
+	}
+
+	/**
+	 * This function finds a shortest path from s to a state that satisfies g, through states in the E[f U g] set.
+	 */
+	private List<Transition> untilPath(int s, long[] until, long[] goal, CtlFormula g){
+		int[] parent = new int[n], via = new int[n], queue = new int[n];
+		Arrays.fill(parent, -2);
+		int head = 0, tail = 0;
+		parent[s] = -1;
+		queue[tail++] = s;
+		while(head < tail){
+			int x = queue[head++];
+			if(get(goal, x)){
+				List<Transition> path = new ArrayList<Transition>();
+				for(int y = x; parent[y] >= 0; y = parent[y])
+					path.add(edges[via[y]]);
+				Collections.reverse(path);
+				return extend(path, g, x);
+			}
+			for(int e = succStart[x]; e < succStart[x+1]; e++){
+				int t = succ[e];
+				if(parent[t] == -2 && get(until, t)){
+					parent[t] = x;
+					via[t] = e;
+					queue[tail++] = t;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * This function follows transitions inside the EG set from s until a state repeats, which it always does
+	 * since every state of the set has a transition into the set.
+	 */
+	private List<Transition> lasso(int s, long[] set){
+		List<Transition> path = new ArrayList<Transition>();
+		boolean[] visited = new boolean[n];
+		for(int x = s; !visited[x]; ){
+			visited[x] = true;
+			for(int e = succStart[x]; e < succStart[x+1]; e++){
+				int t = succ[e];
+				if(get(set, t)){
+					path.add(edges[e]);
+					x = t;
+					break;
+				}
+			}
+		}
+		return path;
+	}
+
+	/*--------------------|
+	|  Tasks              |
+	|--------------------*/
+
+	private class Evaluation extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private final CtlFormula f;
+
+		Evaluation(CtlFormula f){
+			this.f = f;
+		}
+
+		@Override
+		protected long[] compute(){
+			return evaluate(f);
+		}
+	}
+
+	private class Labelling extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CtlFormula f;
+		private final long[] sub, result;
+		private final int from, to;
+
+		Labelling(CtlFormula f, long[] sub, long[] result, int from, int to){
+			this.f = f;
+			this.sub = sub;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute(){
+			if(to - from > WORDS_PER_TASK){
+				int mid = (from + to) >>> 1;
+				invokeAll(new Labelling(f, sub, result, from, mid), new Labelling(f, sub, result, mid, to));
+				return;
+			}
+			label(f, sub, result, from, to);
+		}
+	}
+}
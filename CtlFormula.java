@@ -0,0 +1,168 @@
+package convertion.model;
+
+import java.util.function.Predicate;
+
+/**
+ * This class is a formula of the temporal logic CTL, to be checked with a CtlChecker.
+ * Formulas are built with the static functions of this class, and are stored over the operators
+ * not, and, or, EX, EU and EG only: the other operators are rewritten on construction,
+ * for example AG f = not EF not f and AF f = not EG not f. The text of a formula still shows the operators it was built with.
+ * Atomic propositions are predicates over the name of a state, or over the outgoing transitions of a state.
+ * Paths are infinite, so a state without outgoing transitions satisfies no EX or EG formula, and every AX formula.
+ * Formulas are immutable and can be shared between formulas, a shared subformula is checked only once.
+ * @author Gijs van der Meijde
+ */
+public class CtlFormula {
+	enum Op {TRUE, STATE, TRANSITION, NOT, AND, OR, EX, EU, EG}
+
+	public static final CtlFormula TRUE = new CtlFormula(Op.TRUE, null, null, null, null, "true");
+	public static final CtlFormula FALSE = not(TRUE).named("false");
+
+	final Op op;
+	final CtlFormula left, right;
+	final Predicate<String> state;
+	final Predicate<Transition> transition;
+	final boolean temporal;	/* Contains an EX, EU or EG operator */
+	private final String text;
+
+	private CtlFormula(Op op, CtlFormula left, CtlFormula right, Predicate<String> state, Predicate<Transition> transition, String text){
+		this.op = op;
+		this.left = left;
+		this.right = right;
+		this.state = state;
+		this.transition = transition;
+		this.temporal = op == Op.EX || op == Op.EU || op == Op.EG || (left != null && left.temporal) || (right != null && right.temporal);
+		this.text = text;
+	}
+
+	private CtlFormula named(String text){
+		return new CtlFormula(op, left, right, state, transition, text);
+	}
+
+	/*--------------------|
+	|  Atomic formulas    |
+	|--------------------*/
+
+	/**
+	 * This function creates an atomic proposition over states, the predicate should be thread safe.
+	 * @param name, the name of the proposition.
+	 * @param p, the predicate over state names.
+	 * @return the formula that holds in the states whose name satisfies the predicate.
+	 */
+	public static CtlFormula state(String name, Predicate<String> p){
+		return new CtlFormula(Op.STATE, null, null, p, null, name);
+	}
+
+	/**
+	 * This function creates an atomic proposition over transitions, the predicate should be thread safe.
+	 * @param name, the name of the proposition.
+	 * @param p, the predicate over transitions.
+	 * @return the formula that holds in the states with an outgoing transition that satisfies the predicate.
+	 */
+	public static CtlFormula transition(String name, Predicate<Transition> p){
+		return new CtlFormula(Op.TRANSITION, null, null, null, p, name);
+	}
+
+	/**
+	 * @param output, an output.
+	 * @return the formula that holds in the states with an outgoing transition with the output.
+	 */
+	public static CtlFormula output(String output){
+		return transition("output=" + output, t -> output.equals(t.output()));
+	}
+
+	/**
+	 * @param input, an input.
+	 * @return the formula that holds in the states with an outgoing transition with the input.
+	 */
+	public static CtlFormula input(String input){
+		return transition("input=" + input, t -> input.equals(t.function()));
+	}
+
+	/*--------------------|
+	|  Boolean operators  |
+	|--------------------*/
+
+	public static CtlFormula not(CtlFormula f){
+		if(f.op == Op.NOT)
+			return f.left;
+		return new CtlFormula(Op.NOT, f, null, null, null, "!" + f);
+	}
+
+	public static CtlFormula and(CtlFormula f, CtlFormula g){
+		return new CtlFormula(Op.AND, f, g, null, null, "(" + f + " & " + g + ")");
+	}
+
+	public static CtlFormula or(CtlFormula f, CtlFormula g){
+		return new CtlFormula(Op.OR, f, g, null, null, "(" + f + " | " + g + ")");
+	}
+
+	public static CtlFormula implies(CtlFormula f, CtlFormula g){
+		return or(not(f), g).named("(" + f + " -> " + g + ")");
+	}
+
+	/*--------------------|
+	|  Temporal operators |
+	|--------------------*/
+
+	/**
+	 * @return the formula that holds if some successor satisfies f.
+	 */
+	public static CtlFormula EX(CtlFormula f){
+		return new CtlFormula(Op.EX, f, null, null, null, "EX " + f);
+	}
+
+	/**
+	 * @return the formula that holds if some path satisfies f until it satisfies g.
+	 */
+	public static CtlFormula EU(CtlFormula f, CtlFormula g){
+		return new CtlFormula(Op.EU, f, g, null, null, "E[" + f + " U " + g + "]");
+	}
+
+	/**
+	 * @return the formula that holds if some infinite path satisfies f in every state.
+	 */
+	public static CtlFormula EG(CtlFormula f){
+		return new CtlFormula(Op.EG, f, null, null, null, "EG " + f);
+	}
+
+	/**
+	 * @return the formula that holds if some path reaches a state that satisfies f.
+	 */
+	public static CtlFormula EF(CtlFormula f){
+		return EU(TRUE, f).named("EF " + f);
+	}
+
+	/**
+	 * @return the formula that holds if every successor satisfies f.
+	 */
+	public static CtlFormula AX(CtlFormula f){
+		return not(EX(not(f))).named("AX " + f);
+	}
+
+	/**
+	 * @return the formula that holds if every path satisfies f in every state.
+	 */
+	public static CtlFormula AG(CtlFormula f){
+		return not(EF(not(f))).named("AG " + f);
+	}
+
+	/**
+	 * @return the formula that holds if every infinite path reaches a state that satisfies f.
+	 */
+	public static CtlFormula AF(CtlFormula f){
+		return not(EG(not(f))).named("AF " + f);
+	}
+
+	/**
+	 * @return the formula that holds if every path satisfies f until it satisfies g, and g is reached on every infinite path.
+	 */
+	public static CtlFormula AU(CtlFormula f, CtlFormula g){
+		CtlFormula notG = not(g);
+		return and(not(EU(notG, and(not(f), notG))), not(EG(notG))).named("A[" + f + " U " + g + "]");
+	}
+
+	public String toString(){
+		return text;
+	}
+}
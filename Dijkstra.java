@@ -0,0 +1,108 @@
+package convertion.model;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * This class implements Dijkstra's algorithm and A* on int node ids with reusable scratch arrays.
+ * Distances are only valid for nodes reached in the last search (tracked with a search stamp), so a new search doesn't clear any arrays.
+ * @author Gijs van der Meijde
+ */
+class Dijkstra {
+	/**
+	 * A directed graph with weighted edges.
+	 */
+	interface Graph {
+		int size();
+		int degree(int node);
+		int target(int node, int i);
+		/**
+		 * @return the weight of the i'th edge of node (>= 0), or positive infinity if there is no such edge.
+		 */
+		double weight(int node, int i);
+	}
+
+	private final Graph graph;
+	private final double[] dist;
+	private final int[] parent, parentEdge, stamp;
+	private final IndexedHeap heap;
+	private int current = 0;
+
+	Dijkstra(Graph graph){
+		this.graph = graph;
+		int n = graph.size();
+		dist = new double[n];
+		parent = new int[n];
+		parentEdge = new int[n];
+		stamp = new int[n];
+		heap = new IndexedHeap(n);
+	}
+
+	/**
+	 * This function searches shortest routes from the given node.
+	 * With a heuristic this is A*, the heuristic must be admissible (never overestimate the remaining distance to the goal) for the route to be the shortest.
+	 * @param from, the node to start at.
+	 * @param goal, the node to reach, the search stops as soon as it is settled. -1 to search all nodes.
+	 * @param heuristic, estimate of the distance from a node to the goal, or null for Dijkstra.
+	 * @return true if the goal was reached (or no goal was given).
+	 */
+	boolean search(int from, int goal, IntToDoubleFunction heuristic){
+		if(++current == 0){ //Stamp overflow, reset all stamps once.
+			Arrays.fill(stamp, 0);
+			current = 1;
+		}
+		heap.clear();
+		dist[from] = 0;
+		parent[from] = -1;
+		stamp[from] = current;
+		heap.push(from, heuristic == null ? 0 : heuristic.applyAsDouble(from));
+		while(!heap.isEmpty()){
+			int u = heap.pop();
+			if(u == goal)
+				return true;
+			double du = dist[u];
+			for(int i = 0, degree = graph.degree(u); i < degree; i++){
+				double w = graph.weight(u, i);
+				if(w == Double.POSITIVE_INFINITY)
+					continue;
+				if(w < 0 || Double.isNaN(w))
+					throw new IllegalArgumentException("Negative or NaN weight "+w+" on edge "+i+" of node "+u);
+				int v = graph.target(u, i);
+				double dv = du + w;
+				if(stamp[v] != current || dv < dist[v]){
+					stamp[v] = current;
+					dist[v] = dv;
+					parent[v] = u;
+					parentEdge[v] = i;
+					heap.push(v, heuristic == null ? dv : dv + heuristic.applyAsDouble(v));
+				}
+			}
+		}
+		return goal < 0;
+	}
+
+	/**
+	 * @return the distance to the node found in the last search, or positive infinity if it was not reached.
+	 */
+	double distance(int node){
+		return stamp[node] == current ? dist[node] : Double.POSITIVE_INFINITY;
+	}
+
+	boolean reached(int node){
+		return stamp[node] == current;
+	}
+
+	/**
+	 * @return the node before the given node on the route of the last search, or -1 for the start node.
+	 */
+	int parent(int node){
+		return parent[node];
+	}
+
+	/**
+	 * @return the edge of parent(node) that leads to node.
+	 */
+	int parentEdge(int node){
+		return parentEdge[node];
+	}
+}
@@ -0,0 +1,589 @@
+package convertion.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class parses .DOT files into a Model using a hand-written character level lexer.
+ * Quoted and HTML strings, arbitrary node names, attribute lists, edge chains and comments are supported.
+ * Edges get their input and output from the "input / output" label attribute, edges from a node named __start* mark the start state.
+ * Names and labels are looked up in a per-parser cache, so repeated names don't create new strings.
+ * @author Gijs van der Meijde
+ */
+public class DotParser {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int EOF = 0, ID = 1, ARROW = 2, LBRACKET = 3, RBRACKET = 4, EQUALS = 5, COLON = 6, OTHER = 7;
+	private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+	private final Reader reader;
+	private final char[] buf;
+	private int pos, limit;
+	private int line = 1;
+
+	private char[] tok = new char[256]; /* Text of the current ID token, with quotes and escapes removed */
+	private int tokLen;
+	private boolean quotedToken; /* True if the last ID token was a quoted or HTML string */
+	private int pushback = -1;
+	private int[] chain = new int[2]; /* Symbol ids of the nodes in the current edge statement */
+
+	private String[] cache = new String[1024];
+	private int[] hashes = new int[1024];
+	private int[] symbols = new int[1024]; /* Interned symbol id of every cached string, or -1 if not interned yet */
+	private int cached = 0;
+
+	private final Model model; /* Model to add to directly, or null if the results are recorded in events */
+	private final List<Object> events = new ArrayList<Object>(); /* Parsed nodes (String) and edges (Transition) in order */
+	private String startState = null;
+	private String label;
+	private int input = -1, output = -1;
+
+	private DotParser(Reader reader, Model model){
+		this.reader = reader;
+		this.buf = new char[BUFFER_SIZE];
+		this.model = model;
+	}
+
+	private DotParser(char[] chars, int length){
+		this.reader = null;
+		this.buf = chars;
+		this.limit = length;
+		this.model = null;
+	}
+
+	/**
+	 * This function parses a .DOT file and adds its states and transitions to the given model.
+	 * @param reader, the reader containing the .DOT file.
+	 * @param into, the model to add to.
+	 * @return the given model.
+	 * @throws IOException when the file could not be read or is malformed.
+	 */
+	public static Model parse(Reader reader, Model into) throws IOException{
+		DotParser p = new DotParser(reader, into);
+		p.parse();
+		if(p.startState != null)
+			into.add(p.startState).setStartState(p.startState);
+		return into;
+	}
+
+	/**
+	 * This function parses a .DOT file and adds its states and transitions to the given model.
+	 * In parallel mode the file is memory mapped and split into chunks on line boundaries, the chunks are parsed on the common ForkJoinPool
+	 * and merged in file order, so the result is the same as when parsing sequentially.
+	 * Parallel mode requires statements not to span multiple lines (as in the files generated by LearnLib).
+	 * @param file, the .DOT file (UTF-8).
+	 * @param into, the model to add to.
+	 * @param parallel, weather the file should be parsed in parallel chunks.
+	 * @return the given model.
+	 * @throws IOException when the file could not be read or is malformed.
+	 */
+	public static Model parse(Path file, Model into, boolean parallel) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long size = channel.size();
+			int chunks = parallel ? (int) Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, Math.max(1, size / MIN_CHUNK_SIZE)) : 1;
+			long[] bounds = new long[chunks+1];
+			bounds[chunks] = size;
+			for(int c = 1; c < chunks; c++)
+				bounds[c] = nextLine(channel, Math.max(bounds[c-1], size / chunks * c), size);
+
+			List<Future<DotParser>> parsed = new ArrayList<Future<DotParser>>();
+			for(int c = 0; c < chunks; c++){
+				final long from = bounds[c], to = bounds[c+1];
+				parsed.add(ForkJoinPool.commonPool().submit(() -> parseChunk(channel, from, to)));
+			}
+			String startState = null;
+			for(Future<DotParser> f : parsed){
+				DotParser p = f.get();
+				for(Object o : p.events){
+					if(o instanceof Transition)
+						into.add((Transition) o);
+					else
+						into.add((String) o);
+				}
+				if(p.startState != null)
+					startState = p.startState;
+			}
+			if(startState != null)
+				into.add(startState).setStartState(startState);
+			return into;
+		}catch(InterruptedException e){
+			throw new IOException("Interrupted while parsing "+file, e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not parse "+file, e.getCause());
+		}
+	}
+
+	/**
+	 * This function parses the bytes between the given offsets of a file.
+	 * @return the parser containing the recorded events.
+	 */
+	private static DotParser parseChunk(FileChannel channel, long from, long to) throws IOException{
+		if(to - from > Integer.MAX_VALUE)
+			throw new IOException("Chunk of "+(to-from)+" bytes is too large, parse the file in parallel mode.");
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+		DotParser p = new DotParser(chars.array(), chars.limit());
+		try{
+			p.parse();
+		}catch(IOException e){
+			throw new IOException(e.getMessage()+" (in chunk starting at byte "+from+")", e);
+		}
+		return p;
+	}
+
+	/**
+	 * This function finds the offset after the first newline at or after the given offset.
+	 */
+	private static long nextLine(FileChannel channel, long offset, long size) throws IOException{
+		ByteBuffer b = ByteBuffer.allocate(4096);
+		while(offset < size){
+			b.clear();
+			int read = channel.read(b, offset);
+			if(read <= 0)
+				break;
+			for(int i = 0; i < read; i++)
+				if(b.get(i) == '\n')
+					return offset + i + 1;
+			offset += read;
+		}
+		return size;
+	}
+
+	/*--------------------|
+	|       PARSER        |
+	|--------------------*/
+
+	/**
+	 * This function parses statements until the end of the input.
+	 * Graph headers, subgraphs and braces are skipped, so a chunk may start anywhere between statements.
+	 */
+	private void parse() throws IOException{
+		for(int t = next(); t != EOF; t = next()){
+			if(t == LBRACKET){
+				attributes();
+				continue;
+			}
+			if(t != ID)
+				continue;
+			if(reserved("node") || reserved("edge") || reserved("graph") || reserved("digraph") || reserved("subgraph")){
+				t = next(); //Attribute list, or the name of a (sub)graph.
+				if(t == LBRACKET)
+					attributes();
+				else if(t != ID)
+					pushback = t;
+				continue;
+			}
+			if(reserved("strict"))
+				continue;
+
+			int name = symbol(0, tokLen);
+			t = port();
+			if(t == EQUALS){
+				if(next() != ID)
+					throw error("Expected a value after '='");
+			}else if(t == ARROW){
+				int length = 0;
+				chain[length++] = name;
+				do{
+					if(next() != ID)
+						throw error("Expected a node after '->'");
+					if(length == chain.length)
+						chain = Arrays.copyOf(chain, length*2);
+					chain[length++] = symbol(0, tokLen);
+				}while((t = port()) == ARROW);
+				label = null;
+				input = output = -1;
+				if(t == LBRACKET)
+					attributes();
+				else
+					pushback = t;
+				for(int i = 0; i+1 < length; i++)
+					edge(chain[i], chain[i+1]);
+			}else{
+				if(t == LBRACKET)
+					attributes();
+				else
+					pushback = t;
+				String node = Transition.SYMBOLS.name(name);
+				if(!node.startsWith("__start"))
+					node(node);
+			}
+		}
+	}
+
+	/**
+	 * This function skips the port of a node id (":port" or ":port:compass").
+	 * @return the first token after the port.
+	 */
+	private int port() throws IOException{
+		int t = next();
+		while(t == COLON){
+			if(next() != ID)
+				throw error("Expected a port after ':'");
+			t = next();
+		}
+		return t;
+	}
+
+	/**
+	 * This function parses an attribute list after the opening '[' and remembers the label.
+	 */
+	private void attributes() throws IOException{
+		for(int t = next(); t != RBRACKET; t = next()){
+			if(t == EOF)
+				throw error("Unterminated attribute list");
+			if(t != ID)
+				continue;
+			boolean isLabel = keyword("label");
+			if((t = next()) != EQUALS){
+				pushback = t;
+				continue;
+			}
+			if(next() != ID)
+				throw error("Expected a value after '='");
+			if(isLabel)
+				splitLabel();
+		}
+	}
+
+	/**
+	 * This function splits the current token in an input and output at the first '/'.
+	 */
+	private void splitLabel(){
+		int split = 0;
+		while(split < tokLen && tok[split] != '/')
+			split++;
+		if(split == tokLen){
+			label = text(0, tokLen);
+			input = output = -1;
+			return;
+		}
+		int inStart = 0, inEnd = split, outStart = split+1, outEnd = tokLen;
+		while(inStart < inEnd && tok[inStart] <= ' ') inStart++;
+		while(inEnd > inStart && tok[inEnd-1] <= ' ') inEnd--;
+		while(outStart < outEnd && tok[outStart] <= ' ') outStart++;
+		while(outEnd > outStart && tok[outEnd-1] <= ' ') outEnd--;
+		input = symbol(inStart, inEnd-inStart);
+		output = symbol(outStart, outEnd-outStart);
+		label = null;
+	}
+
+	private void node(String name){
+		if(model != null)
+			model.add(name);
+		else
+			events.add(name);
+	}
+
+	private void edge(int from, int to) throws IOException{
+		if(Transition.SYMBOLS.name(from).startsWith("__start")){
+			startState = Transition.SYMBOLS.name(to);
+			return;
+		}
+		Transition t;
+		if(input >= 0)
+			t = Transition.of(from, to, input, output);
+		else if(label != null)
+			t = new Transition(Transition.SYMBOLS.name(from), Transition.SYMBOLS.name(to), label);
+		else
+			throw error("Transition "+Transition.SYMBOLS.name(from)+" -> "+Transition.SYMBOLS.name(to)+" has no label");
+		if(model != null)
+			model.add(t);
+		else
+			events.add(t);
+	}
+
+	private boolean keyword(String k){
+		if(tokLen != k.length())
+			return false;
+		for(int i = 0; i < tokLen; i++)
+			if(tok[i] != k.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * This function checks if the token is the given DOT keyword, keywords are case-insensitive and a quoted or HTML string is never a keyword.
+	 */
+	private boolean reserved(String k){
+		if(quotedToken || tokLen != k.length())
+			return false;
+		for(int i = 0; i < tokLen; i++)
+			if(Character.toLowerCase(tok[i]) != k.charAt(i))
+				return false;
+		return true;
+	}
+
+	private IOException error(String message){
+		return new IOException(message+" on line "+line);
+	}
+
+	/*--------------------|
+	|        LEXER        |
+	|--------------------*/
+
+	/**
+	 * This function reads the next token, the text of ID tokens (identifiers, numerals, quoted and HTML strings) is stored in tok.
+	 * @return the type of the token.
+	 */
+	private int next() throws IOException{
+		if(pushback >= 0){
+			int t = pushback;
+			pushback = -1;
+			return t;
+		}
+		while(true){
+			int c = peek();
+			if(c < 0)
+				return EOF;
+			pos++;
+			switch(c){
+			case '\n':
+				line++; //Newlines are whitespace.
+				continue;
+			case ' ': case '\t': case '\r': case ';': case ',':
+				continue;
+			case '[':
+				return LBRACKET;
+			case ']':
+				return RBRACKET;
+			case '=':
+				return EQUALS;
+			case ':':
+				return COLON;
+			case '{': case '}':
+				return OTHER;
+			case '#':
+				skipLine();
+				continue;
+			case '/':
+				if(peek() == '/'){
+					skipLine();
+					continue;
+				}else if(peek() == '*'){
+					pos++;
+					skipBlockComment();
+					continue;
+				}
+				throw error("Unexpected character '/'");
+			case '-':
+				if(peek() == '>' || peek() == '-'){
+					pos++;
+					return ARROW;
+				}
+				tokLen = 0;
+				append('-');
+				identifier();
+				return ID;
+			case '"':
+				quoted();
+				quotedToken = true;
+				return ID;
+			case '<':
+				html();
+				quotedToken = true;
+				return ID;
+			default:
+				if(!isIdChar(c))
+					throw error("Unexpected character '"+(char) c+"'");
+				tokLen = 0;
+				append((char) c);
+				identifier();
+				return ID;
+			}
+		}
+	}
+
+	private void identifier() throws IOException{
+		quotedToken = false;
+		for(int c = peek(); c >= 0 && isIdChar(c); c = peek()){
+			append((char) c);
+			pos++;
+		}
+	}
+
+	private void quoted() throws IOException{
+		tokLen = 0;
+		for(int c = read(); c != '"'; c = read()){
+			if(c < 0)
+				throw error("Unterminated string");
+			if(c == '\\'){
+				int e = read();
+				if(e == '\n'){
+					line++;
+					continue; //Line continuation.
+				}
+				if(e < 0)
+					throw error("Unterminated string");
+				if(e != '"' && e != '\\')
+					append('\\');	//Other escapes (like \l in labels) are kept as they are.
+				c = e;
+			}
+			if(c == '\n')
+				line++;
+			append((char) c);
+		}
+	}
+
+	private void html() throws IOException{
+		tokLen = 0;
+		for(int depth = 1, c = read(); ; c = read()){
+			if(c < 0)
+				throw error("Unterminated HTML string");
+			if(c == '<')
+				depth++;
+			else if(c == '>' && --depth == 0)
+				return;
+			if(c == '\n')
+				line++;
+			append((char) c);
+		}
+	}
+
+	private void skipLine() throws IOException{
+		for(int c = peek(); c >= 0 && c != '\n'; c = peek())
+			pos++;
+	}
+
+	private void skipBlockComment() throws IOException{
+		for(int c = read(); ; c = read()){
+			if(c < 0)
+				throw error("Unterminated comment");
+			if(c == '\n')
+				line++;
+			if(c == '*' && peek() == '/'){
+				pos++;
+				return;
+			}
+		}
+	}
+
+	private static boolean isIdChar(int c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c >= 128;
+	}
+
+	private void append(char c){
+		if(tokLen == tok.length){
+			char[] bigger = new char[tok.length*2];
+			System.arraycopy(tok, 0, bigger, 0, tokLen);
+			tok = bigger;
+		}
+		tok[tokLen++] = c;
+	}
+
+	private int read() throws IOException{
+		int c = peek();
+		if(c >= 0)
+			pos++;
+		return c;
+	}
+
+	private int peek() throws IOException{
+		if(pos < limit)
+			return buf[pos];
+		if(reader == null)
+			return -1;
+		limit = reader.read(buf, 0, buf.length);
+		pos = 0;
+		if(limit <= 0){
+			limit = 0;
+			return -1;
+		}
+		return buf[pos];
+	}
+
+	/**
+	 * This function returns the string for a part of tok, reusing an earlier string with the same characters if possible.
+	 * @param off, the start of the part.
+	 * @param len, the length of the part.
+	 * @return the string.
+	 */
+	private String text(int off, int len){
+		int slot = slot(off, len);
+		return cache[slot];
+	}
+
+	/**
+	 * This function returns the interned symbol id for a part of tok.
+	 * @param off, the start of the part.
+	 * @param len, the length of the part.
+	 * @return the symbol id.
+	 */
+	private int symbol(int off, int len){
+		int slot = slot(off, len);
+		if(symbols[slot] < 0)
+			symbols[slot] = Transition.SYMBOLS.intern(cache[slot]);
+		return symbols[slot];
+	}
+
+	/**
+	 * This function finds the cache slot for a part of tok, adding a new string if needed.
+	 */
+	private int slot(int off, int len){
+		int h = 0;
+		for(int i = off; i < off+len; i++)
+			h = 31*h + tok[i];
+		int mask = cache.length-1;
+		for(int slot = mix(h) & mask; ; slot = (slot+1) & mask){
+			String s = cache[slot];
+			if(s == null){
+				if((cached+1)*2 > cache.length){
+					growCache();
+					return slot(off, len);
+				}
+				cache[slot] = new String(tok, off, len);
+				hashes[slot] = h;
+				symbols[slot] = -1;
+				cached++;
+				return slot;
+			}
+			if(hashes[slot] == h && s.length() == len && equals(s, off))
+				return slot;
+		}
+	}
+
+	private static int mix(int h){
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private boolean equals(String s, int off){
+		for(int i = 0; i < s.length(); i++)
+			if(s.charAt(i) != tok[off+i])
+				return false;
+		return true;
+	}
+
+	private void growCache(){
+		String[] old = cache;
+		int[] oldHashes = hashes, oldSymbols = symbols;
+		cache = new String[old.length*2];
+		hashes = new int[old.length*2];
+		symbols = new int[old.length*2];
+		int mask = cache.length-1;
+		for(int i = 0; i < old.length; i++){
+			if(old[i] == null)
+				continue;
+			int slot = mix(oldHashes[i]) & mask;
+			while(cache[slot] != null)
+				slot = (slot+1) & mask;
+			cache[slot] = old[i];
+			hashes[slot] = oldHashes[i];
+			symbols[slot] = oldSymbols[i];
+		}
+	}
+}
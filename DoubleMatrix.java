@@ -0,0 +1,356 @@
+package convertion.model;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoublePredicate;
+
+import convertion.model.Matrix.Coord;
+
+/**
+ * This class is a matrix of doubles, stored row-major in one flat double[] so that cells are not boxed.
+ * It has the same functions as Matrix, where a cell without a value (null in a Matrix) holds NONE (positive infinity),
+ * which is also the 'no edge' value of floydWarshall. Rows and columns are allocated with spare capacity,
+ * so growing the matrix one row or column at a time takes amortised constant time per cell.
+ * @author Gijs van der Meijde
+ */
+public class DoubleMatrix {
+	public static final double NONE = Double.POSITIVE_INFINITY;
+
+	private double[] data = new double[0];
+	private int rows = 0, columns = 0, stride = 0;	/* stride = allocated columns, data.length / stride = allocated rows */
+
+	/**
+	 * Default constructor for an empty matrix.
+	 */
+	public DoubleMatrix(){
+
+	}
+
+	/**
+	 * Constructor that initializes a matrix of given sizes with NONE.
+	 * @param columns, amount of columns.
+	 * @param rows, amount of rows.
+	 */
+	public DoubleMatrix(int columns, int rows){
+		this.increase(rows, columns);
+	}
+
+	/**
+	 * Constructor that initializes a square matrix of given size with NONE.
+	 * @param size, amount of rows and columns of matrix.
+	 */
+	public DoubleMatrix(int size){
+		this(size, size);
+	}
+
+	/**
+	 * This function converts a matrix of numbers, null becomes NONE.
+	 * @param m, the matrix to convert.
+	 * @return the new matrix.
+	 */
+	public static DoubleMatrix of(Matrix<? extends Number> m){
+		return of(m, NONE);
+	}
+
+	/**
+	 * @param m, the matrix to convert.
+	 * @param empty, the value for null.
+	 * @return the new matrix.
+	 */
+	static DoubleMatrix of(Matrix<? extends Number> m, double empty){
+		DoubleMatrix d = new DoubleMatrix(m.getColumnAmount(), m.getRowAmount());
+		List<? extends List<? extends Number>> columns = m.getInnerList();
+		for(int j = 0; j < d.columns; j++){
+			List<? extends Number> column = columns.get(j);
+			for(int i = 0; i < d.rows; i++){
+				Number value = column.get(i);
+				d.data[i*d.stride+j] = value == null ? empty : value.doubleValue();
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * This function converts the matrix to a Matrix, NONE becomes null.
+	 * @return the new matrix.
+	 */
+	public Matrix<Double> toMatrix(){
+		return toMatrix(NONE);
+	}
+
+	/**
+	 * @param empty, the value that becomes null.
+	 * @return the new matrix.
+	 */
+	Matrix<Double> toMatrix(double empty){
+		Matrix<Double> m = new Matrix<Double>(columns, rows);
+		List<List<Double>> inner = m.getInnerList();
+		for(int j = 0; j < columns; j++){
+			List<Double> column = inner.get(j);
+			for(int i = 0; i < rows; i++)
+				column.set(i, data[i*stride+j] == empty ? null : data[i*stride+j]);
+		}
+		return m;
+	}
+
+	/**
+	 * This function sets all fields in the matrix to the given value.
+	 * @param value, the value to initialize the matrix with.
+	 * @return the current matrix.
+	 */
+	public DoubleMatrix initialize(double value){
+		for(int i = 0; i < rows; i++)
+			Arrays.fill(data, i*stride, i*stride+columns, value);
+		return this;
+	}
+
+	/**
+	 * This function retrieves the value on the given index.
+	 * @param row, the row index.
+	 * @param column, the column index.
+	 * @return the value, or NONE.
+	 */
+	public double get(int row, int column){
+		if(row >= rows || column >= columns || row < 0 || column < 0)
+			throw new IndexOutOfBoundsException(String.format("Index %dx%d out of bounds. Matrix size is %dx%d.", row, column, rows, columns));
+		return data[row*stride+column];
+	}
+
+	public double get(Coord<Integer,Integer> coordinate){
+		return this.get(coordinate.fst(), coordinate.snd());
+	}
+
+	/**
+	 * This function sets the given value on the given index, the matrix grows if the index is outside of it.
+	 * @param value, the value to set.
+	 * @param row, the row index.
+	 * @param column, the column index.
+	 * @return the current matrix.
+	 */
+	public DoubleMatrix set(double value, int row, int column){
+		if(row >= rows || column >= columns)
+			this.increase(Math.max(0, row+1-rows), Math.max(0, column+1-columns));
+		data[row*stride+column] = value;
+		return this;
+	}
+
+	public DoubleMatrix set(double value, Coord<Integer,Integer> coordinate){
+		return this.set(value, coordinate.fst(), coordinate.snd());
+	}
+
+	public int getRowAmount(){
+		return rows;
+	}
+
+	public int getColumnAmount(){
+		return columns;
+	}
+
+	/**
+	 * This function returns a view of a row, writing to the view writes to the matrix.
+	 * The view is no longer backed by the matrix after the matrix grew beyond its capacity.
+	 * @param row, the row index.
+	 * @return the row.
+	 */
+	public DoubleBuffer getRow(int row){
+		if(row >= rows || row < 0)
+			throw new IndexOutOfBoundsException(String.format("Row %d out of bounds. Matrix has %d rows.", row, rows));
+		return DoubleBuffer.wrap(data, row*stride, columns).slice();
+	}
+
+	/**
+	 * @param column, the column index.
+	 * @return a copy of the column.
+	 */
+	public double[] getColumn(int column){
+		double[] values = new double[rows];
+		for(int i = 0; i < rows; i++)
+			values[i] = data[i*stride+column];
+		return values;
+	}
+
+	/**
+	 * This function increases the matrix size and initializes the new fields with NONE.
+	 * @param rows, the amount of rows to increase (>=0).
+	 * @param columns, the amount of columns to increase (>=0).
+	 * @return the current matrix.
+	 */
+	public DoubleMatrix increase(int rows, int columns){
+		if(rows < 0 || columns < 0)
+			return this;
+		int newRows = this.rows + rows, newColumns = this.columns + columns;
+		int capacity = stride == 0 ? 0 : data.length / stride;
+		if(newColumns > stride || newRows > capacity){
+			int newStride = newColumns > stride ? Math.max(newColumns, stride*2) : stride;
+			int newCapacity = newRows > capacity ? Math.max(newRows, capacity*2) : capacity;
+			if((long) newStride * newCapacity > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException(String.format("Matrix of %dx%d is too large.", newRows, newColumns));
+			double[] grown = new double[newStride * newCapacity];
+			Arrays.fill(grown, NONE);
+			for(int i = 0; i < this.rows; i++)
+				System.arraycopy(data, i*stride, grown, i*newStride, this.columns);
+			this.data = grown;
+			this.stride = newStride;
+		}
+		this.rows = newRows;
+		this.columns = newColumns;
+		return this;
+	}
+
+	/**
+	 * This function increases the matrix size on both axises by the given size.
+	 * @param size, the amount of rows and columns to increase.
+	 * @return the current matrix.
+	 */
+	public DoubleMatrix increase(int size){
+		return this.increase(size, size);
+	}
+
+	/**
+	 * @return a copy of the current matrix, without spare capacity.
+	 */
+	public DoubleMatrix copy(){
+		DoubleMatrix copy = new DoubleMatrix(columns, rows);
+		for(int i = 0; i < rows; i++)
+			System.arraycopy(data, i*stride, copy.data, i*copy.stride, columns);
+		return copy;
+	}
+
+	/**
+	 * This function filters the matrix by checking the given predicate, cells that don't satisfy it become NONE.
+	 * @param p, the predicate to check, it is not called for NONE.
+	 * @param copy, weather the matrix needs to be copied or modified.
+	 * @return the 'new' matrix.
+	 */
+	public DoubleMatrix filter(DoublePredicate p, boolean copy){
+		DoubleMatrix m = copy ? this.copy() : this;
+		for(int i = 0; i < rows; i++)
+			for(int c = i*m.stride; c < i*m.stride+columns; c++)
+				if(m.data[c] != NONE && !p.test(m.data[c]))
+					m.data[c] = NONE;
+		return m;
+	}
+
+	public DoubleMatrix filter(DoublePredicate p){
+		return filter(p, false);
+	}
+
+	/**
+	 * This function applies the Floyd-Warshall algorithm to the matrix, see FloydWarshall.
+	 * @return a matrix of all shortest distances, NONE if there is no path.
+	 */
+	public DoubleMatrix floydWarshall(){
+		return floydWarshall(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function applies the Floyd-Warshall algorithm to the matrix.
+	 * @param pool, the pool to compute the tiles on.
+	 * @return a matrix of all shortest distances, NONE if there is no path.
+	 */
+	public DoubleMatrix floydWarshall(ForkJoinPool pool){
+		if(rows != columns)
+			throw new IllegalStateException("Square matrix is needed for this operation");
+		DoubleMatrix dist = this.copy();
+		FloydWarshall.run(dist.data, rows, pool);
+		return dist;
+	}
+
+	/**
+	 * This function multiplies the matrix with another matrix, see multiply(DoubleMatrix, Semiring, ForkJoinPool).
+	 * @param m, the right matrix.
+	 * @return the product.
+	 */
+	public DoubleMatrix multiply(DoubleMatrix m){
+		return multiply(m, Semiring.PLUS_TIMES, ForkJoinPool.commonPool());
+	}
+
+	public DoubleMatrix multiply(DoubleMatrix m, Semiring s){
+		return multiply(m, s, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function multiplies the matrix with another matrix over a semiring, see MatrixMultiply.
+	 * The cells are used as they are: NONE is the zero of MIN_PLUS, but infinity for PLUS_TIMES.
+	 * @param m, the right matrix, with as many rows as this matrix has columns.
+	 * @param s, the semiring.
+	 * @param pool, the pool to compute the row blocks on.
+	 * @return the product, with the rows of this matrix and the columns of m.
+	 */
+	public DoubleMatrix multiply(DoubleMatrix m, Semiring s, ForkJoinPool pool){
+		if(columns != m.rows)
+			throw new IllegalArgumentException(String.format("Cannot multiply a %dx%d matrix with a %dx%d matrix.", rows, columns, m.rows, m.columns));
+		DoubleMatrix product = new DoubleMatrix(m.columns, rows).initialize(s.zero());
+		MatrixMultiply.run(data, stride, m.data, m.stride, product.data, product.stride, rows, columns, m.columns, s, pool);
+		return product;
+	}
+
+	public DoubleMatrix power(int k, Semiring s){
+		return power(k, s, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function raises the matrix to a power by repeated squaring, so it takes O(log k) multiplications.
+	 * Over MIN_PLUS cell (i,j) of the k'th power of a distance matrix is the shortest route of exactly k steps,
+	 * and of at most k steps if the diagonal is 0: then the power n-1 has all shortest routes, like floydWarshall.
+	 * @param k, the power (>=0), the power 0 is the identity.
+	 * @param s, the semiring.
+	 * @param pool, the pool to compute the row blocks on.
+	 * @return the power.
+	 */
+	public DoubleMatrix power(int k, Semiring s, ForkJoinPool pool){
+		if(rows != columns)
+			throw new IllegalStateException("Square matrix is needed for this operation");
+		if(k < 0)
+			throw new IllegalArgumentException(String.format("Power %d is negative.", k));
+		DoubleMatrix result = null, square = this;
+		while(k > 0){
+			if((k & 1) != 0)
+				result = result == null ? square.copy() : result.multiply(square, s, pool);
+			k >>>= 1;
+			if(k > 0)
+				square = square.multiply(square, s, pool);
+		}
+		return result == null ? identity(rows, s) : result;
+	}
+
+	/**
+	 * @param size, the amount of rows and columns.
+	 * @param s, the semiring.
+	 * @return the matrix with one on the diagonal and zero elsewhere.
+	 */
+	public static DoubleMatrix identity(int size, Semiring s){
+		DoubleMatrix identity = new DoubleMatrix(size).initialize(s.zero());
+		for(int i = 0; i < size; i++)
+			identity.data[i*identity.stride+i] = s.one();
+		return identity;
+	}
+
+	/**
+	 * Pretty printer for matrix.
+	 * @return pretty printed matrix.
+	 */
+	public String toString(){
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < rows; i++){
+			for(int j = 0; j < columns; j++)
+				s.append(data[i*stride+j] == NONE ? "-" : Double.toString(data[i*stride+j])).append(' ');
+			s.append('\n');
+		}
+		return s.toString();
+	}
+
+	/*--------------------|
+	|  Package access     |
+	|--------------------*/
+
+	double[] data(){
+		return data;
+	}
+
+	int stride(){
+		return stride;
+	}
+}
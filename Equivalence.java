@@ -0,0 +1,193 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class checks if 2 Models behave the same from their start states, and finds a shortest input word on which they differ.
+ * The check is the near linear algorithm of Hopcroft and Karp: pairs of states that must be equivalent are merged in a union-find structure,
+ * and only pairs whose states were not merged yet are explored. Only if the models differ, a breadth first search over the product
+ * (with the visited pairs packed in a LongHashSet) finds a shortest counterexample, it stops at the first level that contains a difference.
+ * The inputs of both models are matched by name. An input that is undefined in a state is treated as a distinct output,
+ * so a word on which one model gets stuck and the other doesn't is a counterexample.
+ * The models are compiled first, so for every state and input only the first transition is used.
+ * @author Gijs van der Meijde
+ */
+public class Equivalence {
+	private final CompiledModel a, b;
+	private final int na, k;
+	private final int[] nextA, nextB, outA, outB;	/* Tables over the union of both alphabets, -1 if undefined */
+	private final List<String> inputs = new ArrayList<String>();
+
+	/**
+	 * Constructor.
+	 * @param first, a model with a start state.
+	 * @param second, a model with a start state.
+	 */
+	public Equivalence(Model first, Model second){
+		if(first.startState() == null || second.startState() == null)
+			throw new IllegalArgumentException("Start state not set!");
+		this.a = first.compile();
+		this.b = second.compile();
+		this.na = a.stateCount();
+		SymbolTable alphabet = new SymbolTable(), outputs = new SymbolTable();
+		for(int i = 0; i < a.inputCount(); i++)
+			alphabet.intern(a.inputs().name(i));
+		for(int i = 0; i < b.inputCount(); i++)
+			alphabet.intern(b.inputs().name(i));
+		this.k = alphabet.size();
+		for(int i = 0; i < k; i++)
+			inputs.add(alphabet.name(i));
+		this.nextA = new int[a.stateCount() * k];
+		this.outA = new int[nextA.length];
+		this.nextB = new int[b.stateCount() * k];
+		this.outB = new int[nextB.length];
+		table(a, alphabet, outputs, nextA, outA);
+		table(b, alphabet, outputs, nextB, outB);
+	}
+
+	/**
+	 * This function fills the tables of a compiled model over the union alphabet, with output ids shared between both models.
+	 */
+	static void table(CompiledModel m, SymbolTable alphabet, SymbolTable outputs, int[] next, int[] out){
+		int k = alphabet.size();
+		int[] local = new int[k], output = new int[m.outputs().size()];
+		for(int i = 0; i < k; i++)
+			local[i] = m.inputs().get(alphabet.name(i));
+		for(int o = 0; o < output.length; o++)
+			output[o] = outputs.intern(m.outputs().name(o));
+		for(int s = 0; s < m.stateCount(); s++){
+			for(int i = 0; i < k; i++){
+				int t = m.step(s, local[i]);
+				next[s*k+i] = t;
+				out[s*k+i] = t < 0 ? -1 : output[m.output(s, local[i])];
+			}
+		}
+	}
+
+	/**
+	 * This function checks if 2 models behave the same from their start states.
+	 * @param first, a model with a start state.
+	 * @param second, a model with a start state.
+	 * @return true if every input word gives the same outputs in both models.
+	 */
+	public static boolean equivalent(Model first, Model second){
+		return new Equivalence(first, second).equivalent();
+	}
+
+	/**
+	 * This function finds a shortest input word on which 2 models give different outputs.
+	 * @param first, a model with a start state.
+	 * @param second, a model with a start state.
+	 * @return the inputs of the word, or null if the models are equivalent.
+	 */
+	public static List<String> counterexample(Model first, Model second){
+		Equivalence e = new Equivalence(first, second);
+		return e.equivalent() ? null : e.shortestCounterexample();
+	}
+
+	/**
+	 * This function checks if the models are equivalent with the union-find algorithm of Hopcroft and Karp.
+	 * @return true if every input word gives the same outputs in both models.
+	 */
+	public boolean equivalent(){
+		int nb = b.stateCount();
+		int[] parent = new int[na + nb], rank = new int[na + nb];
+		for(int i = 0; i < parent.length; i++)
+			parent[i] = i;
+		int[] stack = new int[32];
+		int top = 0;
+		union(parent, rank, a.startState(), na + b.startState());
+		stack[top++] = a.startState();
+		stack[top++] = b.startState();
+		while(top > 0){
+			int q = stack[--top], p = stack[--top];
+			for(int i = 0; i < k; i++){
+				if(outA[p*k+i] != outB[q*k+i])
+					return false;
+				int p2 = nextA[p*k+i], q2 = nextB[q*k+i];
+				if(p2 < 0)
+					continue;
+				if(union(parent, rank, p2, na + q2)){
+					if(top + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					stack[top++] = p2;
+					stack[top++] = q2;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This function finds a shortest input word on which the models give different outputs, with a breadth first search over the product.
+	 * @return the inputs of the word, or null if the models are equivalent.
+	 */
+	public List<String> shortestCounterexample(){
+		LongHashSet visited = new LongHashSet();
+		long[] queue = new long[64];
+		int[] from = new int[64], via = new int[64];
+		int head = 0, tail = 0;
+		queue[tail++] = LongHashSet.pack(a.startState(), b.startState());
+		visited.add(queue[0]);
+		from[0] = -1;
+		while(head < tail){
+			int position = head++;
+			int p = LongHashSet.high(queue[position]), q = LongHashSet.low(queue[position]);
+			for(int i = 0; i < k; i++){
+				if(outA[p*k+i] != outB[q*k+i]){
+					List<String> word = new ArrayList<String>();
+					word.add(inputs.get(i));
+					for(int v = position; from[v] != -1; v = from[v])
+						word.add(inputs.get(via[v]));
+					Collections.reverse(word);
+					return word;
+				}
+				int p2 = nextA[p*k+i];
+				if(p2 < 0)
+					continue;
+				long pair = LongHashSet.pack(p2, nextB[q*k+i]);
+				if(visited.add(pair)){
+					if(tail == queue.length){
+						queue = Arrays.copyOf(queue, tail*2);
+						from = Arrays.copyOf(from, tail*2);
+						via = Arrays.copyOf(via, tail*2);
+					}
+					queue[tail] = pair;
+					from[tail] = position;
+					via[tail++] = i;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static int find(int[] parent, int x){
+		while(parent[x] != x){
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+
+	/**
+	 * @return true if x and y were in different sets.
+	 */
+	private static boolean union(int[] parent, int[] rank, int x, int y){
+		x = find(parent, x);
+		y = find(parent, y);
+		if(x == y)
+			return false;
+		if(rank[x] < rank[y]){
+			int swap = x;
+			x = y;
+			y = swap;
+		}
+		parent[y] = x;
+		if(rank[x] == rank[y])
+			rank[x]++;
+		return true;
+	}
+}
@@ -0,0 +1,94 @@
+package convertion.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements the cache blocked (tiled) Floyd-Warshall algorithm on a flat row-major double[] distance matrix.
+ * For every block k the diagonal tile is solved first, then the tiles in block row and column k, then all other tiles.
+ * The tiles of the second and third phase don't depend on each other and are computed in parallel on a ForkJoinPool.
+ * Positive infinity means there is no edge.
+ * @author Gijs van der Meijde
+ */
+class FloydWarshall {
+	static final int BLOCK = 64; /* 64x64 doubles = 32KB per tile, so the three tiles of an update fit in L2 */
+
+	private FloydWarshall(){
+		
+	}
+
+	/**
+	 * This function replaces every distance in d by the length of the shortest path.
+	 * @param d, row-major n x n matrix, d[i*n+j] is the distance from i to j.
+	 * @param n, the amount of rows and columns.
+	 * @param pool, the pool to compute the tiles on.
+	 */
+	static void run(double[] d, int n, ForkJoinPool pool){
+		int blocks = (n + BLOCK - 1) / BLOCK;
+		for(int kb = 0; kb < blocks; kb++){
+			update(d, n, kb, kb, kb);
+			pool.invoke(new Tiles(d, n, blocks, kb, false, 0, 2*blocks));
+			pool.invoke(new Tiles(d, n, blocks, kb, true, 0, blocks*blocks));
+		}
+	}
+
+	/**
+	 * This function relaxes tile (ib, jb) through the nodes of block kb.
+	 * The k loop is the outer loop, so this is also correct when the tile is in block row or column kb.
+	 */
+	static void update(double[] d, int n, int ib, int jb, int kb){
+		int iEnd = Math.min(n, (ib+1)*BLOCK), jStart = jb*BLOCK, jEnd = Math.min(n, jStart+BLOCK), kEnd = Math.min(n, (kb+1)*BLOCK);
+		for(int k = kb*BLOCK; k < kEnd; k++){
+			int kRow = k*n;
+			for(int i = ib*BLOCK; i < iEnd; i++){
+				int iRow = i*n;
+				double dik = d[iRow+k];
+				if(dik == Double.POSITIVE_INFINITY)
+					continue;
+				for(int j = jStart; j < jEnd; j++){
+					double v = dik + d[kRow+j];
+					if(v < d[iRow+j])
+						d[iRow+j] = v;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Task that updates a range of tiles of one phase.
+	 * Phase 2 tiles are numbered 0..2*blocks (block row kb, then block column kb), phase 3 tiles row by row.
+	 */
+	private static class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] d;
+		private final int n, blocks, kb, from, to;
+		private final boolean rest;
+
+		Tiles(double[] d, int n, int blocks, int kb, boolean rest, int from, int to){
+			this.d = d;
+			this.n = n;
+			this.blocks = blocks;
+			this.kb = kb;
+			this.rest = rest;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute(){
+			if(to - from > 1){
+				int mid = (from + to) >>> 1;
+				invokeAll(new Tiles(d, n, blocks, kb, rest, from, mid), new Tiles(d, n, blocks, kb, rest, mid, to));
+			}else if(rest){
+				int ib = from / blocks, jb = from % blocks;
+				if(ib != kb && jb != kb)
+					update(d, n, ib, jb, kb);
+			}else if(from < blocks){
+				if(from != kb)
+					update(d, n, kb, from, kb);
+			}else if(from - blocks != kb){
+				update(d, n, from - blocks, kb, kb);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package convertion.model;
+
+import java.util.Arrays;
+
+/**
+ * This class is a binary min-heap of int ids in the range 0..capacity-1, keyed on doubles.
+ * The position of every id in the heap is tracked, so keys can be decreased in O(log n).
+ * All storage is allocated once, clear() only touches the ids still in the heap, so the heap can be reused without allocating.
+ * @author Gijs van der Meijde
+ */
+class IndexedHeap {
+	private final int[] heap, pos;	/* pos[id] = index of id in heap, or -1 */
+	private final double[] key;
+	private int size = 0;
+
+	IndexedHeap(int capacity){
+		heap = new int[capacity];
+		pos = new int[capacity];
+		key = new double[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	boolean isEmpty(){
+		return size == 0;
+	}
+
+	boolean contains(int id){
+		return pos[id] >= 0;
+	}
+
+	/**
+	 * This function adds the id, or lowers its key if it is already in the heap with a higher key.
+	 * @param id, the id.
+	 * @param k, the key.
+	 */
+	void push(int id, double k){
+		if(pos[id] < 0){
+			heap[size] = id;
+			pos[id] = size++;
+			key[id] = k;
+			up(pos[id]);
+		}else if(k < key[id]){
+			key[id] = k;
+			up(pos[id]);
+		}
+	}
+
+	/**
+	 * @return the id with the smallest key, which is removed from the heap.
+	 */
+	int pop(){
+		int top = heap[0];
+		pos[top] = -1;
+		if(--size > 0){
+			heap[0] = heap[size];
+			pos[heap[0]] = 0;
+			down(0);
+		}
+		return top;
+	}
+
+	void clear(){
+		for(int i = 0; i < size; i++)
+			pos[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void up(int i){
+		int id = heap[i];
+		double k = key[id];
+		while(i > 0){
+			int parent = (i - 1) >>> 1;
+			if(key[heap[parent]] <= k)
+				break;
+			heap[i] = heap[parent];
+			pos[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = id;
+		pos[id] = i;
+	}
+
+	private void down(int i){
+		int id = heap[i];
+		double k = key[id];
+		while(true){
+			int child = 2*i + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && key[heap[child+1]] < key[heap[child]])
+				child++;
+			if(key[heap[child]] >= k)
+				break;
+			heap[i] = heap[child];
+			pos[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = id;
+		pos[id] = i;
+	}
+}
@@ -0,0 +1,276 @@
+package convertion.model;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+import convertion.model.Matrix.Coord;
+
+/**
+ * This class is a matrix of ints, stored row-major in one flat int[] so that cells are not boxed.
+ * It has the same functions as Matrix, where a cell without a value (null in a Matrix) holds NONE (Integer.MAX_VALUE,
+ * like AllPairsRoutes.UNREACHABLE), which is also the 'no edge' value of floydWarshall. Rows and columns are allocated with spare capacity,
+ * so growing the matrix one row or column at a time takes amortised constant time per cell.
+ * @author Gijs van der Meijde
+ */
+public class IntMatrix {
+	public static final int NONE = Integer.MAX_VALUE;
+
+	private int[] data = new int[0];
+	private int rows = 0, columns = 0, stride = 0;	/* stride = allocated columns, data.length / stride = allocated rows */
+
+	/**
+	 * Default constructor for an empty matrix.
+	 */
+	public IntMatrix(){
+
+	}
+
+	/**
+	 * Constructor that initializes a matrix of given sizes with NONE.
+	 * @param columns, amount of columns.
+	 * @param rows, amount of rows.
+	 */
+	public IntMatrix(int columns, int rows){
+		this.increase(rows, columns);
+	}
+
+	/**
+	 * Constructor that initializes a square matrix of given size with NONE.
+	 * @param size, amount of rows and columns of matrix.
+	 */
+	public IntMatrix(int size){
+		this(size, size);
+	}
+
+	/**
+	 * This function converts a matrix of numbers, null becomes NONE.
+	 * @param m, the matrix to convert.
+	 * @return the new matrix.
+	 */
+	public static IntMatrix of(Matrix<? extends Number> m){
+		IntMatrix d = new IntMatrix(m.getColumnAmount(), m.getRowAmount());
+		List<? extends List<? extends Number>> columns = m.getInnerList();
+		for(int j = 0; j < d.columns; j++){
+			List<? extends Number> column = columns.get(j);
+			for(int i = 0; i < d.rows; i++){
+				Number value = column.get(i);
+				d.data[i*d.stride+j] = value == null ? NONE : value.intValue();
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * This function converts the matrix to a Matrix, NONE becomes null.
+	 * @return the new matrix.
+	 */
+	public Matrix<Integer> toMatrix(){
+		Matrix<Integer> m = new Matrix<Integer>(columns, rows);
+		List<List<Integer>> inner = m.getInnerList();
+		for(int j = 0; j < columns; j++){
+			List<Integer> column = inner.get(j);
+			for(int i = 0; i < rows; i++)
+				column.set(i, data[i*stride+j] == NONE ? null : data[i*stride+j]);
+		}
+		return m;
+	}
+
+	/**
+	 * This function sets all fields in the matrix to the given value.
+	 * @param value, the value to initialize the matrix with.
+	 * @return the current matrix.
+	 */
+	public IntMatrix initialize(int value){
+		for(int i = 0; i < rows; i++)
+			Arrays.fill(data, i*stride, i*stride+columns, value);
+		return this;
+	}
+
+	/**
+	 * This function retrieves the value on the given index.
+	 * @param row, the row index.
+	 * @param column, the column index.
+	 * @return the value, or NONE.
+	 */
+	public int get(int row, int column){
+		if(row >= rows || column >= columns || row < 0 || column < 0)
+			throw new IndexOutOfBoundsException(String.format("Index %dx%d out of bounds. Matrix size is %dx%d.", row, column, rows, columns));
+		return data[row*stride+column];
+	}
+
+	public int get(Coord<Integer,Integer> coordinate){
+		return this.get(coordinate.fst(), coordinate.snd());
+	}
+
+	/**
+	 * This function sets the given value on the given index, the matrix grows if the index is outside of it.
+	 * @param value, the value to set.
+	 * @param row, the row index.
+	 * @param column, the column index.
+	 * @return the current matrix.
+	 */
+	public IntMatrix set(int value, int row, int column){
+		if(row >= rows || column >= columns)
+			this.increase(Math.max(0, row+1-rows), Math.max(0, column+1-columns));
+		data[row*stride+column] = value;
+		return this;
+	}
+
+	public IntMatrix set(int value, Coord<Integer,Integer> coordinate){
+		return this.set(value, coordinate.fst(), coordinate.snd());
+	}
+
+	public int getRowAmount(){
+		return rows;
+	}
+
+	public int getColumnAmount(){
+		return columns;
+	}
+
+	/**
+	 * This function returns a view of a row, writing to the view writes to the matrix.
+	 * The view is no longer backed by the matrix after the matrix grew beyond its capacity.
+	 * @param row, the row index.
+	 * @return the row.
+	 */
+	public IntBuffer getRow(int row){
+		if(row >= rows || row < 0)
+			throw new IndexOutOfBoundsException(String.format("Row %d out of bounds. Matrix has %d rows.", row, rows));
+		return IntBuffer.wrap(data, row*stride, columns).slice();
+	}
+
+	/**
+	 * @param column, the column index.
+	 * @return a copy of the column.
+	 */
+	public int[] getColumn(int column){
+		int[] values = new int[rows];
+		for(int i = 0; i < rows; i++)
+			values[i] = data[i*stride+column];
+		return values;
+	}
+
+	/**
+	 * This function increases the matrix size and initializes the new fields with NONE.
+	 * @param rows, the amount of rows to increase (>=0).
+	 * @param columns, the amount of columns to increase (>=0).
+	 * @return the current matrix.
+	 */
+	public IntMatrix increase(int rows, int columns){
+		if(rows < 0 || columns < 0)
+			return this;
+		int newRows = this.rows + rows, newColumns = this.columns + columns;
+		int capacity = stride == 0 ? 0 : data.length / stride;
+		if(newColumns > stride || newRows > capacity){
+			int newStride = newColumns > stride ? Math.max(newColumns, stride*2) : stride;
+			int newCapacity = newRows > capacity ? Math.max(newRows, capacity*2) : capacity;
+			if((long) newStride * newCapacity > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException(String.format("Matrix of %dx%d is too large.", newRows, newColumns));
+			int[] grown = new int[newStride * newCapacity];
+			Arrays.fill(grown, NONE);
+			for(int i = 0; i < this.rows; i++)
+				System.arraycopy(data, i*stride, grown, i*newStride, this.columns);
+			this.data = grown;
+			this.stride = newStride;
+		}
+		this.rows = newRows;
+		this.columns = newColumns;
+		return this;
+	}
+
+	/**
+	 * This function increases the matrix size on both axises by the given size.
+	 * @param size, the amount of rows and columns to increase.
+	 * @return the current matrix.
+	 */
+	public IntMatrix increase(int size){
+		return this.increase(size, size);
+	}
+
+	/**
+	 * @return a copy of the current matrix, without spare capacity.
+	 */
+	public IntMatrix copy(){
+		IntMatrix copy = new IntMatrix(columns, rows);
+		for(int i = 0; i < rows; i++)
+			System.arraycopy(data, i*stride, copy.data, i*copy.stride, columns);
+		return copy;
+	}
+
+	/**
+	 * This function filters the matrix by checking the given predicate, cells that don't satisfy it become NONE.
+	 * @param p, the predicate to check, it is not called for NONE.
+	 * @param copy, weather the matrix needs to be copied or modified.
+	 * @return the 'new' matrix.
+	 */
+	public IntMatrix filter(IntPredicate p, boolean copy){
+		IntMatrix m = copy ? this.copy() : this;
+		for(int i = 0; i < rows; i++)
+			for(int c = i*m.stride; c < i*m.stride+columns; c++)
+				if(m.data[c] != NONE && !p.test(m.data[c]))
+					m.data[c] = NONE;
+		return m;
+	}
+
+	public IntMatrix filter(IntPredicate p){
+		return filter(p, false);
+	}
+
+	/**
+	 * This function applies the Floyd-Warshall algorithm to the matrix, see FloydWarshall.
+	 * @return a matrix of all shortest distances, NONE if there is no path.
+	 */
+	public IntMatrix floydWarshall(){
+		return floydWarshall(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * This function applies the Floyd-Warshall algorithm to the matrix, the distances are computed as doubles so sums can not overflow.
+	 * @param pool, the pool to compute the tiles on.
+	 * @return a matrix of all shortest distances, NONE if there is no path (or the distance does not fit in an int).
+	 */
+	public IntMatrix floydWarshall(ForkJoinPool pool){
+		if(rows != columns)
+			throw new IllegalStateException("Square matrix is needed for this operation");
+		int n = rows;
+		double[] d = new double[n*n];
+		for(int i = 0; i < n; i++)
+			for(int j = 0; j < n; j++)
+				d[i*n+j] = data[i*stride+j] == NONE ? DoubleMatrix.NONE : data[i*stride+j];
+		FloydWarshall.run(d, n, pool);
+		IntMatrix dist = new IntMatrix(n);
+		for(int c = 0; c < n*n; c++)
+			dist.data[c] = d[c] >= NONE ? NONE : (int) Math.max(d[c], Integer.MIN_VALUE);
+		return dist;
+	}
+
+	/**
+	 * Pretty printer for matrix.
+	 * @return pretty printed matrix.
+	 */
+	public String toString(){
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < rows; i++){
+			for(int j = 0; j < columns; j++)
+				s.append(data[i*stride+j] == NONE ? "-" : Integer.toString(data[i*stride+j])).append(' ');
+			s.append('\n');
+		}
+		return s.toString();
+	}
+
+	/*--------------------|
+	|  Package access     |
+	|--------------------*/
+
+	int[] data(){
+		return data;
+	}
+
+	int stride(){
+		return stride;
+	}
+}
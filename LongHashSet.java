@@ -0,0 +1,124 @@
+package convertion.model;
+
+import java.util.Arrays;
+
+/**
+ * This class is a set of primitive longs with open addressing and linear probing, used to store pairs of states packed in a long.
+ * It avoids the boxing and the entry objects of a HashSet<Long>, so it takes 8 to 16 bytes per element.
+ * @author Gijs van der Meijde
+ */
+class LongHashSet {
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] table;
+	private int size = 0;
+	private boolean containsEmpty = false;	/* EMPTY marks free slots, so it is stored separately */
+
+	/**
+	 * Constructor.
+	 * @param expected, the amount of elements the set should hold without growing.
+	 */
+	LongHashSet(int expected){
+		int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+		this.table = new long[capacity];
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * Constructor for an empty set.
+	 */
+	LongHashSet(){
+		this(16);
+	}
+
+	/**
+	 * This function packs 2 ints in a long.
+	 * @param high, the int in the high 32 bits.
+	 * @param low, the int in the low 32 bits.
+	 * @return the packed long.
+	 */
+	static long pack(int high, int low){
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	static int high(long packed){
+		return (int) (packed >>> 32);
+	}
+
+	static int low(long packed){
+		return (int) packed;
+	}
+
+	/**
+	 * This function adds an element.
+	 * @param key, the element to add.
+	 * @return true if the element was not in the set yet.
+	 */
+	boolean add(long key){
+		if(key == EMPTY){
+			if(containsEmpty)
+				return false;
+			containsEmpty = true;
+			size++;
+			return true;
+		}
+		int mask = table.length - 1;
+		for(int slot = mix(key) & mask; ; slot = (slot+1) & mask){
+			long k = table[slot];
+			if(k == key)
+				return false;
+			if(k == EMPTY){
+				table[slot] = key;
+				if(++size * 2 > table.length)
+					grow();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @param key, the element to look for.
+	 * @return true if the element is in the set.
+	 */
+	boolean contains(long key){
+		if(key == EMPTY)
+			return containsEmpty;
+		int mask = table.length - 1;
+		for(int slot = mix(key) & mask; ; slot = (slot+1) & mask){
+			long k = table[slot];
+			if(k == key)
+				return true;
+			if(k == EMPTY)
+				return false;
+		}
+	}
+
+	/**
+	 * @return the amount of elements in the set.
+	 */
+	int size(){
+		return size;
+	}
+
+	private void grow(){
+		long[] old = table;
+		if(old.length == 1 << 30)
+			throw new IllegalStateException("Set of longs can not hold more than 2^29 elements.");
+		table = new long[old.length * 2];
+		Arrays.fill(table, EMPTY);
+		int mask = table.length - 1;
+		for(long key : old){
+			if(key == EMPTY)
+				continue;
+			int slot = mix(key) & mask;
+			while(table[slot] != EMPTY)
+				slot = (slot+1) & mask;
+			table[slot] = key;
+		}
+	}
+
+	private static int mix(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -1,8 +1,11 @@
 package convertion.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 
 /**
  * This class is a wrapper class for a List of Lists that makes it easier to define matrices.
@@ -10,6 +13,8 @@ import java.util.function.Predicate;
  * @param <T> the type of the inner values.
  */
 public class Matrix<T> {
+	private static final byte WALL = -1, FREE = 0, FORWARD = 1, BACKWARD = 2;	/* Marks of the cells in a route search */
+	
 	private List<List<T>> matrix = new ArrayList<List<T>>();
 	private int rows = 0, columns = 0;
 	
@@ -156,9 +161,10 @@ public class Matrix<T> {
 	 */
 	public <E> Matrix<E> copy(Matrix<E> m){
 		Matrix<E> copy = new Matrix<E>();
-		for(int i=0; i<m.getColumnAmount()-1; i++)
-			for(int j=0; j<m.getRowAmount()-1; j++)
-				copy.set(m.get(i, j), i,j);
+		for(List<E> column : m.matrix)
+			copy.matrix.add(new ArrayList<E>(column));
+		copy.columns = m.columns;
+		copy.rows = m.rows;
 		return copy;
 	}
 	
@@ -176,14 +182,14 @@ public class Matrix<T> {
 	 * @return pretty printed matrix.
 	 */
 	public String toString(){
-		String s = "";
+		StringBuilder s = new StringBuilder();
 		for(int i = 0; i < rows; i++){
 			for(int j = 0; j < columns; j++){
-				s += (this.get(i, j) == null ? "-" : this.get(i, j).toString()) + " ";
+				s.append(this.get(i, j) == null ? "-" : this.get(i, j).toString()).append(' ');
 			}
-			s += "\n"; 
+			s.append('\n'); 
 		}
-		return s;		
+		return s.toString();
 	}
 	
 	/**
@@ -223,138 +229,259 @@ public class Matrix<T> {
 	|--------------------*/
 	
 	/**
-	 * Basic matrix multiplication (only works for Number subtypes).
+	 * Matrix multiplication (only works for Number subtypes), see multiply(Matrix, Semiring).
 	 * @param m, the matrix to multiply with this one.
-	 * @return the new matrix.
+	 * @return the new matrix, null is 0 (in both matrices and in the result).
 	 * @throws Exception, an exception is thrown when the matrices could not be multiplied.
 	 */
-	public Matrix<T> multiply(Matrix<T> m) throws Exception{
-		if(!this.isNumber())
+	public Matrix<Double> multiply(Matrix<?> m) throws Exception{
+		return multiply(m, Semiring.PLUS_TIMES);
+	}
+	
+	/**
+	 * Matrix multiplication over a semiring (only works for Number subtypes), null is the zero of the semiring.
+	 * The values are copied to DoubleMatrices, which are multiplied cache blocked and in parallel, see MatrixMultiply.
+	 * With Semiring.MIN_PLUS and distances (null if there is no edge) the product holds the shortest routes of two steps.
+	 * @param m, the matrix to multiply with this one, it needs as many rows as this matrix has columns.
+	 * @param s, the semiring.
+	 * @return the new matrix, with the rows of this matrix and the columns of m.
+	 * @throws Exception, an exception is thrown when the matrices could not be multiplied.
+	 */
+	public Matrix<Double> multiply(Matrix<?> m, Semiring s) throws Exception{
+		if(!this.isNumber() || !m.isNumber())
 			throw new Exception("Cannot multiply non-numbers!");
-		
-		int newSize = Integer.max(rows, columns);
-		Matrix<Double> s = new Matrix<Double>(newSize, newSize);
-		
-		//Row * Column.
-		if(!(rows == m.getColumnAmount() && columns == m.getRowAmount()))
+		if(columns != m.getRowAmount())
 			throw new Exception("Incompatible matrix sizes!");
 		
-		for(int i = 0; i<newSize; i++){
-			for(int j = 0; j<newSize; j++){
-				Double newVal = .0;
-				for(int tRow = 0; tRow < rows; tRow++){
-					for(int mCol = 0; mCol < m.getColumnAmount(); mCol++){
-						newVal += ((Double) this.get(tRow, j)) * ((Double) m.get(i, mCol)); 
-					}
-				}
-				s.set(newVal, i, j);
-			}
-		}
-		//return s;
-		throw new Exception("Not implemented yet...");
+		@SuppressWarnings("unchecked")
+		DoubleMatrix left = DoubleMatrix.of((Matrix<? extends Number>) this, s.zero()), right = DoubleMatrix.of((Matrix<? extends Number>) m, s.zero());
+		return left.multiply(right, s).toMatrix(s.zero());
 	}
 	
 	/**
 	 * This function will apply the Floyd-Warshall algorithm to the matrix and return a new matrix containing all 'shortest distances'.
-	 * For this to work the matrix needs to be casted to a matrix of doubles.
+	 * The values are copied to a DoubleMatrix (null is infinity) on which the cache blocked algorithm runs in parallel, see FloydWarshall.
 	 * Source: https://www.geeksforgeeks.org/dynamic-programming-set-16-floyd-warshall-algorithm/
-	 * @return a matrix of all shortest distances as doubles.
-	 * @throws Exception, when the matrix could not be casted to a double.
+	 * @return a matrix of all shortest distances as doubles, null if there is no path.
+	 * @throws Exception, when the matrix is not square or does not contain numbers.
 	 */
 	public Matrix<Double> floydWarshall() throws Exception{
+		return floydWarshall(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * This function will apply the Floyd-Warshall algorithm to the matrix and return a new matrix containing all 'shortest distances'.
+	 * @param pool, the pool to compute the tiles on.
+	 * @return a matrix of all shortest distances as doubles, null if there is no path.
+	 * @throws Exception, when the matrix is not square or does not contain numbers.
+	 */
+	public Matrix<Double> floydWarshall(ForkJoinPool pool) throws Exception{
 		if(!this.isNumber())
 			throw new Exception("Cannot apply Floyd-Warshall on non-numbers!");
+		if(rows != columns)
+			throw new Exception("Square matrix is needed for this operation");
 		
-		Matrix<Double> dist = (Matrix<Double>) this.copy();
-		for(int k = 0; k < columns; k++){
-			for(int i = 0; i < columns; i++){
-				for(int j = 0; j < rows; j++){
-					if (dist.get(i, k) + dist.get(k,j) < dist.get(i,j))
-                        dist.set(dist.get(i,k) + dist.get(k,j), i,j);
-				}
-			}
-		}
-		
-		return dist;
+		@SuppressWarnings("unchecked")
+		Matrix<? extends Number> numbers = (Matrix<? extends Number>) this;
+		return DoubleMatrix.of(numbers).floydWarshall(pool).toMatrix();
 	}
 	
 	/**
-	 * This function returns the shortest route trough the matrix (if one exists)
-	 * @param goal, the index to reach.
-	 * @param origin, the index to start at.
-	 * @return a list of coordinates representing the shortest path.
+	 * This function returns a shortest route trough the matrix (if one exists), moving between horizontally and vertically adjacent cells.
+	 * Cells that hold null can not be entered, the cell to start at can always be left.
+	 * @param goal, the index (row, column) to reach.
+	 * @param origin, the index (row, column) to start at.
+	 * @return a list of coordinates representing the shortest path, from origin to goal (both included), or null if there is none.
 	 */
-	public List<Coord<Integer,Integer>> getRoute(Coord<Integer,Integer> from, Coord<Integer,Integer> to){
-		Matrix<Boolean> visited = new Matrix<Boolean>(columns,rows);
-		for(int i = 0; i<columns; i++)
-			for(int j = 0; j<rows; j++)
-				visited.set(this.get(i, j)==null, i, j);
-		return getRouteRecursively(from, to, visited);
+	public List<Coord<Integer,Integer>> getRoute(Coord<Integer,Integer> goal, Coord<Integer,Integer> origin){
+		return getRoute(goal, origin, false);
 	}
 	
 	/**
-	 * This function returns the shortest route trough the matrix (if one exists).
-	 * @param goal, the index to reach.
-	 * @param origin, the index to start at.
-	 * @param visited, a boolean matrix to mark the paths that are visited (can be used to block routes).
-	 * @return a list of coordinates representing the shortest path.
+	 * This function returns a shortest route trough the matrix (if one exists), moving between horizontally and vertically adjacent cells.
+	 * Cells that hold null can not be entered, the cell to start at can always be left.
+	 * The route is found with a breadth first search over the cells, with one mark per cell and the parent of every cell in an int array.
+	 * A bidirectional search grows a search from both ends, always a full level of the smaller one, which visits far less cells on long routes.
+	 * @param goal, the index (row, column) to reach.
+	 * @param origin, the index (row, column) to start at.
+	 * @param bidirectional, weather to search from both ends.
+	 * @return a list of coordinates representing the shortest path, from origin to goal (both included), or null if there is none.
 	 */
-	private ArrayList<Coord<Integer,Integer>> getRouteRecursively(Coord<Integer, Integer> goal, Coord<Integer, Integer> origin, Matrix<Boolean> visited){
-		ArrayList<Coord<Integer,Integer>> left=null,right=null,up=null,down=null,route = new ArrayList<Coord<Integer,Integer>>();
-		visited.set(true,origin.fst(),origin.snd());
-		route.add(origin);
-		
-		//Check if goal is reached, 
-		if(goal.equals(origin)){
+	public List<Coord<Integer,Integer>> getRoute(Coord<Integer,Integer> goal, Coord<Integer,Integer> origin, boolean bidirectional){
+		int start = cell(origin), end = cell(goal);
+		if(start == end){
+			List<Coord<Integer,Integer>> route = new ArrayList<Coord<Integer,Integer>>();
+			route.add(origin);
 			return route;
 		}
-		
-		//Check all directions.
-		if(origin.fst() > 0 && !visited.get(origin.fst()-1,origin.snd())){
-			left = getRouteRecursively(goal
-										, new Coord<Integer,Integer>(origin.fst()-1, origin.snd())
-										, copy(visited));
-		}
-		if(origin.fst() > columns-1 && !visited.get(origin.fst()+1, origin.snd())){
-			right = getRouteRecursively(goal
-										, new Coord<Integer,Integer>(origin.fst()+1, origin.snd())
-										, copy(visited));
+		byte[] mark = new byte[rows*columns];
+		for(int j = 0; j < columns; j++){
+			List<T> column = matrix.get(j);
+			for(int i = 0; i < rows; i++)
+				if(column.get(i) == null)
+					mark[i*columns+j] = WALL;
 		}
-		if(origin.snd() > 0 && !visited.get(origin.fst(), origin.snd()-1)){
-			up = getRouteRecursively(goal
-										, new Coord<Integer,Integer>(origin.fst(), origin.snd()-1)
-										, copy(visited));
+		if(mark[end] == WALL)
+			return null;
+		int[] parent = new int[rows*columns];
+		return bidirectional ? searchBoth(start, end, mark, parent) : search(start, end, mark, parent);
+	}
+	
+	/**
+	 * This function searches a route breadth first from start.
+	 * @return the route, or null if there is none.
+	 */
+	private List<Coord<Integer,Integer>> search(int start, int end, byte[] mark, int[] parent){
+		int[] queue = new int[mark.length], neighbours = new int[4];
+		int head = 0, tail = 0;
+		mark[start] = FORWARD;
+		queue[tail++] = start;
+		while(head < tail){
+			int x = queue[head++];
+			for(int k = neighbours(x, neighbours) - 1; k >= 0; k--){
+				int y = neighbours[k];
+				if(mark[y] != FREE)
+					continue;
+				mark[y] = FORWARD;
+				parent[y] = x;
+				if(y == end)
+					return route(start, end, -1, -1, parent);
+				queue[tail++] = y;
+			}
 		}
-		if(origin.snd() > rows-1 && !visited.get(origin.fst(), origin.snd()+1)){
-			down = getRouteRecursively(goal
-										, new Coord<Integer,Integer>(origin.fst(), origin.snd()+1)
-										, copy(visited));
+		return null;
+	}
+	
+	/**
+	 * This function searches a route breadth first from both start and end. Every step expands a full level of the smallest frontier,
+	 * and the shortest connection between both searches found in that level is the route.
+	 * @return the route, or null if there is none.
+	 */
+	private List<Coord<Integer,Integer>> searchBoth(int start, int end, byte[] mark, int[] parent){
+		int[] dist = new int[mark.length], neighbours = new int[4];
+		int[][] queue = {new int[mark.length], new int[mark.length]};
+		int[] head = {0, 0}, tail = {1, 1};
+		queue[0][0] = start;
+		queue[1][0] = end;
+		mark[start] = FORWARD;
+		mark[end] = BACKWARD;
+		int best = Integer.MAX_VALUE, meetForward = -1, meetBackward = -1;
+		while(best == Integer.MAX_VALUE && head[0] < tail[0] && head[1] < tail[1]){
+			int side = tail[0] - head[0] <= tail[1] - head[1] ? 0 : 1;
+			byte own = side == 0 ? FORWARD : BACKWARD, other = side == 0 ? BACKWARD : FORWARD;
+			for(int level = tail[side]; head[side] < level; ){
+				int x = queue[side][head[side]++];
+				for(int k = neighbours(x, neighbours) - 1; k >= 0; k--){
+					int y = neighbours[k];
+					if(mark[y] == other){
+						if(dist[x] + 1 + dist[y] < best){
+							best = dist[x] + 1 + dist[y];
+							meetForward = side == 0 ? x : y;
+							meetBackward = side == 0 ? y : x;
+						}
+					}else if(mark[y] == FREE){
+						mark[y] = own;
+						parent[y] = x;
+						dist[y] = dist[x] + 1;
+						queue[side][tail[side]++] = y;
+					}
+				}
+			}
 		}
-		
-		if(up == null && down == null && left == null && right == null)
+		if(best == Integer.MAX_VALUE)
 			return null;
-		if(up.size() < down.size() && up.size() < left.size() && up.size() < right.size()){
-			route.addAll(up);
-		}else if(down.size() < up.size() && down.size() < left.size() && down.size() < right.size()){
-			route.addAll(down);
-		}else if(left.size() < down.size() && left.size() < up.size() && left.size() < right.size()){
-			route.addAll(left);
-		}else if(right.size() < down.size() && right.size() < left.size() && right.size() < up.size()){
-			route.addAll(right);
+		return route(start, end, meetForward, meetBackward, parent);
+	}
+	
+	/**
+	 * This function rebuilds a route from the parents of the cells.
+	 * @param meetForward, the last cell of the search from start, or -1 if there was only one search.
+	 * @param meetBackward, the first cell of the search from end, which points towards end.
+	 */
+	private List<Coord<Integer,Integer>> route(int start, int end, int meetForward, int meetBackward, int[] parent){
+		ArrayList<Coord<Integer,Integer>> route = new ArrayList<Coord<Integer,Integer>>();
+		for(int x = meetForward < 0 ? end : meetForward; x != start; x = parent[x])
+			route.add(coord(x));
+		route.add(coord(start));
+		Collections.reverse(route);
+		if(meetForward >= 0){
+			for(int x = meetBackward; x != end; x = parent[x])
+				route.add(coord(x));
+			route.add(coord(end));
 		}
 		return route;
 	}
 	
 	/**
-	 * This function returns the shortest route through a weighted graph.
+	 * This function lists the cells next to a cell: up, down, left and right if they exist.
+	 * @return the amount of neighbours.
+	 */
+	private int neighbours(int x, int[] neighbours){
+		int row = x / columns, column = x % columns, count = 0;
+		if(row > 0)
+			neighbours[count++] = x - columns;
+		if(row < rows-1)
+			neighbours[count++] = x + columns;
+		if(column > 0)
+			neighbours[count++] = x - 1;
+		if(column < columns-1)
+			neighbours[count++] = x + 1;
+		return count;
+	}
+	
+	private int cell(Coord<Integer,Integer> coordinate){
+		if(coordinate.fst() < 0 || coordinate.snd() < 0 || coordinate.fst() >= rows || coordinate.snd() >= columns)
+			throw new IndexOutOfBoundsException(String.format("Index %dx%d out of bounds. Matrix size is %dx%d.", coordinate.fst(), coordinate.snd(), rows, columns));
+		return coordinate.fst()*columns + coordinate.snd();
+	}
+	
+	private Coord<Integer,Integer> coord(int cell){
+		return new Coord<Integer,Integer>(cell / columns, cell % columns);
+	}
+	
+	/**
+	 * This function returns the shortest route through a weighted graph, where the matrix is the adjacency matrix of the graph.
+	 * Cell (i, j) holds the weight of the edge from node i to node j, null means there is no edge.
 	 * It uses dijkstra's algorithm to find the shortest route.
-	 * @param goal, the index to reach.
-	 * @param origin, the index to start at.
-	 * @return a list of coordinates representing the shortest path.
+	 * @param from, the coordinate of the node to start at (the row is used).
+	 * @param to, the coordinate of the node to reach (the row is used).
+	 * @return a list of the cells (edges) on the shortest path, or null if there is none.
 	 * @throws Exception if route could not be calculated.
 	 */
 	public List<Coord<Integer,Integer>> getWeightedRoute(Coord<Integer,Integer> from, Coord<Integer,Integer> to) throws Exception{
-		throw new Exception("Not implemented yet...");
+		if(!this.isNumber())
+			throw new Exception("Cannot use non-numbers as weights, give a cost function instead!");
+		return getWeightedRoute(from.fst(), to.fst(), v -> ((Number) v).doubleValue());
+	}
+	
+	/**
+	 * This function returns the shortest route through a weighted graph, where the matrix is the adjacency matrix of the graph.
+	 * Cell (i, j) holds the edge from node i to node j, null means there is no edge.
+	 * @param from, the node to start at.
+	 * @param to, the node to reach.
+	 * @param cost, the weight of the value in a cell (>= 0).
+	 * @return a list of the cells (edges) on the shortest path, or null if there is none.
+	 * @throws Exception if route could not be calculated.
+	 */
+	public List<Coord<Integer,Integer>> getWeightedRoute(int from, int to, ToDoubleFunction<T> cost) throws Exception{
+		if(rows != columns)
+			throw new Exception("Square matrix is needed for this operation");
+		Dijkstra dijkstra = new Dijkstra(new Dijkstra.Graph(){
+			public int size(){ return rows; }
+			public int degree(int node){ return columns; }
+			public int target(int node, int i){ return i; }
+			public double weight(int node, int i){
+				T value = matrix.get(i).get(node);
+				return value == null ? Double.POSITIVE_INFINITY : cost.applyAsDouble(value);
+			}
+		});
+		if(!dijkstra.search(from, to, null))
+			return null;
+		ArrayList<Coord<Integer,Integer>> route = new ArrayList<Coord<Integer,Integer>>();
+		for(int node = to; node != from; node = dijkstra.parent(node))
+			route.add(new Coord<Integer,Integer>(dijkstra.parent(node), node));
+		Collections.reverse(route);
+		return route;
 	}
 	
 	/**
@@ -382,41 +509,42 @@ public class Matrix<T> {
 	|--------------------*/
 	
 	/**
-	 * Function to add X columns.
+	 * Function to add X columns, every column is allocated at once with room for its rows.
 	 * @param amount the amount of columns to add.
 	 */
 	private void growX(int amount){
-		for(int i = 0; i<amount; i++){
-			columns += 1;
-			matrix.add(new ArrayList<T>());
-			for(int j=0; j<rows; j++){
-				matrix.get(columns-1).add(null);
-			}
-		}
+		if(amount <= 0)
+			return;
+		List<T> empty = Collections.<T>nCopies(rows, null);
+		for(int i = 0; i<amount; i++)
+			matrix.add(new ArrayList<T>(empty));
+		columns += amount;
 	}
 	
 	/**
-	 * Function to add X rows.
+	 * Function to add X rows, every column is extended at once (ArrayList grows geometrically).
 	 * @param amount, the amount of rows to add.
 	 */
 	private void growY(int amount){
+		if(amount <= 0)
+			return;
 		rows += amount;
-		for(int i = 0; i<amount; i++){
-			for(int j = 0; j<columns; j++){
-				matrix.get(j).add(null);
-			}
-		}
+		List<T> empty = Collections.<T>nCopies(amount, null);
+		for(List<T> column : matrix)
+			column.addAll(empty);
 	}
 	
 	/**
-	 * Checks if the inner type is of the Number supertype.
+	 * Checks if the inner type is of the Number supertype, by looking at the first value that is not null.
 	 * Returns false if no value is set yet!
 	 * @return true if the inner type is of the Number supertype, false otherwise.
 	 */
 	private boolean isNumber(){
-		if(rows <= 0 && columns <= 0)
-			return false;
-		return matrix.get(0).get(0) instanceof Number;
+		for(List<T> column : matrix)
+			for(T value : column)
+				if(value != null)
+					return value instanceof Number;
+		return false;
 	}
 	
 	/**
@@ -0,0 +1,120 @@
+package convertion.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements cache blocked matrix multiplication over a Semiring on flat row-major double[] matrices.
+ * The loops are in i-k-j order, so the innermost loop runs along a row of the right matrix and a row of the result.
+ * The k and j loops are tiled so that the tile of the right matrix stays in L2 while all rows of a row block use it,
+ * and the row blocks are computed in parallel on a ForkJoinPool (they write disjoint rows of the result).
+ * A cell of the left matrix that is zero is skipped, as its products can not change the result.
+ * @author Gijs van der Meijde
+ */
+class MatrixMultiply {
+	static final int ROWS = 64, DEPTH = 64, COLUMNS = 256; /* 64x256 doubles = 128KB tile of the right matrix */
+	private static final long PARALLEL_WORK = 1L << 20; /* Multiply-adds below which a single thread is used */
+
+	private MatrixMultiply(){
+
+	}
+
+	/**
+	 * This function computes c = a * b, c must be filled with the zero of the semiring.
+	 * @param a, the n x m left matrix, a[i*aStride+k] is cell (i,k).
+	 * @param b, the m x p right matrix, b[k*bStride+j] is cell (k,j).
+	 * @param c, the n x p result matrix, c[i*cStride+j] is cell (i,j).
+	 * @param n, the amount of rows of a and c.
+	 * @param m, the amount of columns of a and rows of b.
+	 * @param p, the amount of columns of b and c.
+	 * @param s, the semiring.
+	 * @param pool, the pool to compute the row blocks on.
+	 */
+	static void run(double[] a, int aStride, double[] b, int bStride, double[] c, int cStride, int n, int m, int p, Semiring s, ForkJoinPool pool){
+		if((long) n * m * p < PARALLEL_WORK)
+			rows(a, aStride, b, bStride, c, cStride, m, p, s, 0, n);
+		else
+			pool.invoke(new Rows(a, aStride, b, bStride, c, cStride, m, p, s, 0, n));
+	}
+
+	/**
+	 * This function computes rows start to end of the product.
+	 */
+	static void rows(double[] a, int aStride, double[] b, int bStride, double[] c, int cStride, int m, int p, Semiring s, int start, int end){
+		double zero = s.zero();
+		for(int k0 = 0; k0 < m; k0 += DEPTH){
+			int k1 = Math.min(m, k0 + DEPTH);
+			for(int j0 = 0; j0 < p; j0 += COLUMNS){
+				int j1 = Math.min(p, j0 + COLUMNS);
+				for(int i = start; i < end; i++){
+					int aRow = i*aStride, cRow = i*cStride;
+					for(int k = k0; k < k1; k++){
+						double aik = a[aRow+k];
+						if(aik == zero)
+							continue;
+						int bRow = k*bStride;
+						if(s == Semiring.PLUS_TIMES){
+							for(int j = j0; j < j1; j++)
+								c[cRow+j] += aik * b[bRow+j];
+						}else if(s == Semiring.MIN_PLUS){
+							for(int j = j0; j < j1; j++){
+								double v = aik + b[bRow+j];
+								if(v < c[cRow+j])
+									c[cRow+j] = v;
+							}
+						}else if(s == Semiring.MAX_PLUS){
+							for(int j = j0; j < j1; j++){
+								double v = aik + b[bRow+j];
+								if(v > c[cRow+j])
+									c[cRow+j] = v;
+							}
+						}else if(s == Semiring.MAX_MIN){
+							for(int j = j0; j < j1; j++){
+								double v = Math.min(aik, b[bRow+j]);
+								if(v > c[cRow+j])
+									c[cRow+j] = v;
+							}
+						}else{
+							for(int j = j0; j < j1; j++)
+								c[cRow+j] = s.add(c[cRow+j], s.multiply(aik, b[bRow+j]));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Task that computes a range of rows, split into blocks of ROWS rows.
+	 */
+	private static class Rows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] a, b, c;
+		private final int aStride, bStride, cStride, m, p, start, end;
+		private final Semiring s;
+
+		Rows(double[] a, int aStride, double[] b, int bStride, double[] c, int cStride, int m, int p, Semiring s, int start, int end){
+			this.a = a;
+			this.aStride = aStride;
+			this.b = b;
+			this.bStride = bStride;
+			this.c = c;
+			this.cStride = cStride;
+			this.m = m;
+			this.p = p;
+			this.s = s;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute(){
+			if(end - start > ROWS){
+				int mid = start + (((end - start) / ROWS + 1) >>> 1) * ROWS;
+				invokeAll(new Rows(a, aStride, b, bStride, c, cStride, m, p, s, start, mid), new Rows(a, aStride, b, bStride, c, cStride, m, p, s, mid, end));
+			}else{
+				rows(a, aStride, b, bStride, c, cStride, m, p, s, start, end);
+			}
+		}
+	}
+}
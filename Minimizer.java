@@ -0,0 +1,264 @@
+package convertion.model;
+
+import java.util.Arrays;
+
+/**
+ * This class minimizes a (partial) Mealy machine with Hopcroft's partition refinement, in O(m log n) for m transitions and n states.
+ * The initial partition groups states by their output signature: the output of every input, where undefined inputs have their own output.
+ * States in the same block therefore have the same defined inputs, and blocks are refined with splitters (block, input) over
+ * the inverse transitions of the input. All (block, input) pairs start in the worklist, after that only the smaller half of a split
+ * block is added (or both halves, if the split block was still waiting).
+ * The model is compiled first, so for every state and input only the first transition is used.
+ * The refinement also works on plain transition tables, which is used to partition the disjoint union of 2 models.
+ * @author Gijs van der Meijde
+ */
+class Minimizer {
+	private final CompiledModel compiled;
+	private final int n, k;
+	private final int[] next, out;	/* Tables indexed by state*k+input, -1 if undefined */
+	private final int[] predStart, pred;	/* pred[predStart[t*k+a]..predStart[t*k+a+1]) = states with an a-transition to t */
+
+	private final int[] elements, location, blockOf, blockStart, blockEnd, marked;
+	private int blocks = 0;
+	private final int[] touched;
+	private int touchedCount = 0;
+	private int[] worklist;
+	private int worklistSize = 0;
+	private boolean[] waiting;	/* waiting[block*k+a] = (block, a) is in the worklist */
+	private final int[] keyStamp, keyGroup, groupSize, scratch;
+	private int stamp = 0;
+
+	private Minimizer(Model m){
+		this(m.compile());
+	}
+
+	private Minimizer(CompiledModel compiled){
+		this(compiled, compiled.stateCount(), compiled.inputCount(), table(compiled, true), table(compiled, false), compiled.outputs().size());
+	}
+
+	private Minimizer(CompiledModel compiled, int n, int k, int[] next, int[] out, int outputs){
+		this.compiled = compiled;
+		this.n = n;
+		this.k = k;
+		this.next = next;
+		this.out = out;
+		this.predStart = new int[n*k+1];
+		for(int c = 0; c < n*k; c++)
+			if(next[c] >= 0)
+				predStart[next[c]*k+c%k+1]++;
+		for(int c = 0; c < n*k; c++)
+			predStart[c+1] += predStart[c];
+		this.pred = new int[predStart[n*k]];
+		int[] fill = Arrays.copyOf(predStart, n*k);
+		for(int c = 0; c < n*k; c++)
+			if(next[c] >= 0)
+				pred[fill[next[c]*k+c%k]++] = c/k;
+		this.elements = new int[n];
+		this.location = new int[n];
+		this.blockOf = new int[n];
+		this.blockStart = new int[n+1];
+		this.blockEnd = new int[n+1];
+		this.marked = new int[n+1];
+		this.touched = new int[n+1];
+		this.worklist = new int[16];
+		this.waiting = new boolean[Math.max(n, 1) * Math.max(k, 1)];
+		this.keyStamp = new int[outputs + 1];
+		this.keyGroup = new int[keyStamp.length];
+		this.groupSize = new int[keyStamp.length];
+		this.scratch = new int[n];
+	}
+
+	private static int[] table(CompiledModel compiled, boolean next){
+		int k = compiled.inputCount();
+		int[] table = new int[compiled.stateCount() * k];
+		for(int s = 0; s < compiled.stateCount(); s++)
+			for(int a = 0; a < k; a++)
+				table[s*k+a] = next ? compiled.step(s, a) : compiled.output(s, a);
+		return table;
+	}
+
+	/**
+	 * This function returns the minimal model with the same behaviour from every state.
+	 * Every state of the result is named after the first state (by index) of its class of equivalent states.
+	 * @param m, the model to minimize.
+	 * @return the quotient model.
+	 */
+	static Model minimize(Model m){
+		Minimizer min = new Minimizer(m);
+		min.refine();
+		return min.quotient();
+	}
+
+	/**
+	 * This function partitions the states of a transition table into classes of equivalent states.
+	 * @param n, the amount of states.
+	 * @param k, the amount of inputs.
+	 * @param next, the next state of state s and input a at s*k+a, or -1 if undefined.
+	 * @param out, the output id of state s and input a at s*k+a, or -1 if undefined.
+	 * @param outputs, the amount of output ids.
+	 * @return the class of every state, classes are numbered from 0.
+	 */
+	static int[] partition(int n, int k, int[] next, int[] out, int outputs){
+		Minimizer min = new Minimizer(null, n, k, next, out, outputs);
+		min.refine();
+		return min.blockOf;
+	}
+
+	private void refine(){
+		if(n == 0)
+			return;
+		for(int s = 0; s < n; s++)
+			elements[s] = location[s] = s;
+		blockStart[0] = 0;
+		blockEnd[0] = n;
+		blocks = 1;
+		//Initial partition: split every block on the output of every input.
+		int[] key = new int[n];
+		for(int a = 0; a < k; a++){
+			int current = blocks;
+			for(int b = 0; b < current; b++){
+				for(int p = blockStart[b]; p < blockEnd[b]; p++)
+					key[elements[p]] = out[elements[p]*k+a];
+				splitByKey(b, key);
+			}
+		}
+		for(int b = 0; b < blocks; b++)
+			for(int a = 0; a < k; a++)
+				push(b, a);
+
+		while(worklistSize > 0){
+			int splitter = worklist[--worklistSize];
+			waiting[splitter] = false;
+			int c = splitter / k, a = splitter % k;
+			//Mark the a-predecessors of the splitter, marked states are moved to the front of their block.
+			//The splitter is copied first, since marking may reorder it.
+			int size = blockEnd[c] - blockStart[c];
+			System.arraycopy(elements, blockStart[c], scratch, 0, size);
+			for(int j = 0; j < size; j++){
+				int t = scratch[j];
+				for(int i = predStart[t*k+a]; i < predStart[t*k+a+1]; i++)
+					mark(pred[i]);
+			}
+			for(int i = 0; i < touchedCount; i++){
+				int b = touched[i];
+				if(marked[b] < blockEnd[b] - blockStart[b])
+					split(b, marked[b]);
+				marked[b] = 0;
+			}
+			touchedCount = 0;
+		}
+	}
+
+	private void mark(int s){
+		int b = blockOf[s];
+		if(location[s] < blockStart[b] + marked[b])
+			return;
+		if(marked[b] == 0)
+			touched[touchedCount++] = b;
+		int target = blockStart[b] + marked[b]++;
+		int other = elements[target];
+		elements[target] = s;
+		elements[location[s]] = other;
+		location[other] = location[s];
+		location[s] = target;
+	}
+
+	/**
+	 * This function splits the first count states of block b into a new block, and updates the worklist.
+	 */
+	private void split(int b, int count){
+		int nb = blocks++;
+		blockStart[nb] = blockStart[b];
+		blockEnd[nb] = blockStart[b] + count;
+		blockStart[b] = blockEnd[nb];
+		for(int p = blockStart[nb]; p < blockEnd[nb]; p++)
+			blockOf[elements[p]] = nb;
+		boolean smaller = blockEnd[nb] - blockStart[nb] <= blockEnd[b] - blockStart[b];
+		for(int a = 0; a < k; a++){
+			if(waiting[b*k+a])
+				push(nb, a);
+			else
+				push(smaller ? nb : b, a);
+		}
+	}
+
+	/**
+	 * This function splits block b into blocks of states with the same key (an output id, or -1), used for the initial partition.
+	 * The states are grouped with a counting sort on the keys that occur in the block.
+	 */
+	private void splitByKey(int b, int[] key){
+		int from = blockStart[b], to = blockEnd[b], groups = 0;
+		stamp++;
+		for(int p = from; p < to; p++){
+			int x = key[elements[p]] + 1;
+			if(keyStamp[x] != stamp){
+				keyStamp[x] = stamp;
+				keyGroup[x] = groups;
+				groupSize[groups++] = 0;
+			}
+			groupSize[keyGroup[x]]++;
+		}
+		if(groups == 1)
+			return;
+
+		for(int g = 0, offset = from; g < groups; g++){
+			int size = groupSize[g];
+			groupSize[g] = offset;
+			offset += size;
+		}
+		for(int p = from; p < to; p++)
+			scratch[groupSize[keyGroup[key[elements[p]] + 1]]++ - from] = elements[p];
+		for(int p = from; p < to; p++){
+			elements[p] = scratch[p - from];
+			location[elements[p]] = p;
+		}
+		//groupSize[g] is now the end of group g, group 0 stays block b.
+		blockEnd[b] = groupSize[0];
+		for(int g = 1; g < groups; g++){
+			int nb = blocks++;
+			blockStart[nb] = groupSize[g-1];
+			blockEnd[nb] = groupSize[g];
+			for(int p = blockStart[nb]; p < blockEnd[nb]; p++)
+				blockOf[elements[p]] = nb;
+		}
+	}
+
+	private void push(int b, int a){
+		int splitter = b*k+a;
+		if(waiting[splitter])
+			return;
+		waiting[splitter] = true;
+		if(worklistSize == worklist.length)
+			worklist = Arrays.copyOf(worklist, worklistSize*2);
+		worklist[worklistSize++] = splitter;
+	}
+
+	/**
+	 * This function builds the quotient model, with one state per block.
+	 */
+	private Model quotient(){
+		Model q = new Model();
+		int[] representative = new int[blocks];
+		Arrays.fill(representative, Integer.MAX_VALUE);
+		for(int s = 0; s < n; s++)
+			representative[blockOf[s]] = Math.min(representative[blockOf[s]], s);
+		int[] order = Arrays.copyOf(representative, blocks);
+		Arrays.sort(order);
+		for(int s : order)
+			q.add(compiled.stateName(s));
+		for(int s : order){
+			String from = compiled.stateName(s);
+			for(int a = 0; a < k; a++){
+				int t = next[s*k+a];
+				if(t < 0)
+					continue;
+				Transition original = compiled.transition(s, a);
+				String to = compiled.stateName(representative[blockOf[t]]);
+				q.add(original.input() != null ? new Transition(from, to, original.input(), original.output()) : new Transition(from, to, original.label()));
+			}
+		}
+		if(compiled.startState() >= 0)
+			q.setStartState(compiled.stateName(representative[blockOf[compiled.startState()]]));
+		return q;
+	}
+}
@@ -1,28 +1,47 @@
 package convertion.model;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.function.ToDoubleFunction;
 
 import application.Main;
-import convertion.model.Matrix.Coord;
 
 /**
- * This class is developed for Model Checking, it uses a matrix of transitions to represent a model.
+ * This class is developed for Model Checking, it uses sparse per-state edge arrays to represent a model.
+ * Every state has an index, and for every index the outgoing transitions and the indices of their target states are stored,
+ * so memory is linear in the amount of states plus transitions.
  * @author Gijs van der Meijde
  */
 public class Model {
+	private static final int INITIAL_CAPACITY = 16, INITIAL_DEGREE = 4;
+	
 	public Set<String> functions = new HashSet<String>();
-	private Matrix<List<Transition>> matrix; /* Rows = from state, Columns = to state, value = list of transitions between those states */
-	private Matrix<List<Transition>> shortestRoutes = null;
-	private Map<String,Integer> stateMap = new HashMap<String,Integer>(); /* Map that links a state name to a index in the matrix */
+	private AllPairsRoutes shortestRoutes = null;
+	private ReachabilityIndex reachability = null;
+	private SplittingTree splittingTree = null;
+	private CtlChecker checker = null;
+	private StronglyConnectedComponents components = null;
+	private Map<String,Integer> stateMap = new HashMap<String,Integer>(); /* Map that links a state name to its index */
+	private List<String> states = new ArrayList<String>(); /* List that links an index to its state name */
+	private Transition[][] edges = new Transition[INITIAL_CAPACITY][]; /* edges[s] = outgoing transitions of state s, only the first degree[s] are used */
+	private int[][] targets = new int[INITIAL_CAPACITY][]; /* targets[s][i] = index of the target state of edges[s][i] */
+	private int[] degree = new int[INITIAL_CAPACITY];
+	private int transitionCount = 0;
 	private int startStateIndex = 0;
+	private int modCount = 0; /* Amount of changes to the states and transitions, used to detect stale results */
+	private long fingerprint;
+	private int fingerprintModCount = -1, fingerprintStart = -1;
 
 	/**
 	 * Constructor that copies a list of transitions and a list of states.
@@ -30,8 +49,10 @@ public class Model {
 	 * @param states, the list of states.
 	 */
 	public Model(List<Transition> transitions, List<String> states){
+		this.ensureCapacity(states.size());
 		this.initializeStates(states);
-		this.addAll((Transition[]) transitions.toArray());
+		for(Transition t : transitions)
+			this.add(t);
 	}
 	
 	/**
@@ -41,30 +62,64 @@ public class Model {
 	public Model(List<Transition> transitions){
 		Set<String> states = new HashSet<String>();
 		for(Transition t : transitions){
-			states.add(t.orgFrom);
-			states.add(t.orgTo);
+			states.add(t.orgFrom());
+			states.add(t.orgTo());
 		}
+		this.ensureCapacity(states.size());
 		this.initializeStates(new ArrayList<String>(states));
-		this.addAll((Transition[]) transitions.toArray());
+		for(Transition t : transitions)
+			this.add(t);
 	}
 	
 	/**
 	 * Default constructor.
 	 */
 	public Model(){
-		this.matrix = new Matrix<List<Transition>>();
-		this.stateMap = new HashMap<String,Integer>();
+		
+	}
+	
+	/**
+	 * Constructor that takes over finished tables, used by ModelBuilder.
+	 * @param states, the state names by index.
+	 * @param stateMap, the index of every state name.
+	 * @param edges, the outgoing transitions of every state (at least one row, rows may be null if the degree is 0).
+	 * @param targets, the target state indices of the transitions.
+	 * @param degree, the amount of outgoing transitions of every state.
+	 * @param transitionCount, the total amount of transitions.
+	 * @param startState, the index of the start state.
+	 */
+	Model(List<String> states, Map<String,Integer> stateMap, Transition[][] edges, int[][] targets, int[] degree, int transitionCount, int startState){
+		this.states = states;
+		this.stateMap = stateMap;
+		this.edges = edges;
+		this.targets = targets;
+		this.degree = degree;
+		this.transitionCount = transitionCount;
+		this.startStateIndex = startState;
+		for(int s = 0; s < states.size(); s++)
+			for(int i = 0; i < degree[s]; i++)
+				this.functions.add(edges[s][i].function());
 	}
 	
 	/**
 	 * Copy constructor.
+	 * Note that while the edge tables are copied, the transitions are referenced!
 	 * @param m, the model to copy.
 	 */
 	public Model(Model m){
-		this.matrix = m.matrix.copy();
-		this.stateMap = new HashMap<String,Integer>();
-		for(String s : m.getStates())
-			this.stateMap.put(s, stateMap.size());
+		this.states = new ArrayList<String>(m.states);
+		this.stateMap = new HashMap<String,Integer>(m.stateMap);
+		this.edges = new Transition[m.edges.length][];
+		this.targets = new int[m.targets.length][];
+		this.degree = Arrays.copyOf(m.degree, m.degree.length);
+		for(int s = 0; s < m.states.size(); s++){
+			if(m.degree[s] > 0){
+				this.edges[s] = Arrays.copyOf(m.edges[s], m.degree[s]);
+				this.targets[s] = Arrays.copyOf(m.targets[s], m.degree[s]);
+			}
+		}
+		this.transitionCount = m.transitionCount;
+		this.startStateIndex = m.startStateIndex;
 		for(String s : m.functions)
 			this.functions.add(s);
 	}
@@ -74,12 +129,7 @@ public class Model {
 	 * @return the start state if it exists, returns null otherwise.
 	 */
 	public String startState(){
-		for (Entry<String, Integer> entry : stateMap.entrySet()) {
-	        if (entry.getValue() == startStateIndex) {
-	            return entry.getKey();
-	        }
-	    }
-	    return null;
+		return startStateIndex < states.size() ? states.get(startStateIndex) : null;
 	}
 	
 	/**
@@ -93,11 +143,12 @@ public class Model {
 		return this;
 	}
 	
+	/**
+	 * This function returns the names of all states, ordered by their index.
+	 * @return a list of all state names.
+	 */
 	public List<String> getStates(){
-		List<String> toReturn = new ArrayList<String>();
-		for (Entry<String, Integer> entry : stateMap.entrySet())
-			toReturn.add(entry.getKey());
-		return toReturn;
+		return new ArrayList<String>(states);
 	}
 	
 	/**
@@ -116,12 +167,24 @@ public class Model {
 	 * @return the current model.
 	 */
 	public Model add(Transition t){
-		this.add(t.orgFrom);
-		this.add(t.orgTo);
-		this.functions.add(t.input != null ? t.input : (t.label.split("/")[0].trim()));
-		if(matrix.get(stateMap.get(t.orgFrom), stateMap.get(t.orgTo)) == null)
-			matrix.set(new ArrayList<Transition>(), stateMap.get(t.orgFrom), stateMap.get(t.orgTo));
-		matrix.get(stateMap.get(t.orgFrom), stateMap.get(t.orgTo)).add(t);
+		int from = this.addState(t.orgFrom()), to = this.addState(t.orgTo());
+		this.functions.add(t.function());
+		if(edges[from] == null){
+			edges[from] = new Transition[INITIAL_DEGREE];
+			targets[from] = new int[INITIAL_DEGREE];
+		}else if(degree[from] == edges[from].length){
+			edges[from] = Arrays.copyOf(edges[from], Math.max(INITIAL_DEGREE, degree[from]*2));
+			targets[from] = Arrays.copyOf(targets[from], Math.max(INITIAL_DEGREE, degree[from]*2));
+		}
+		edges[from][degree[from]] = t;
+		targets[from][degree[from]] = to;
+		degree[from]++;
+		transitionCount++;
+		modCount++;
+		if(shortestRoutes != null)
+			shortestRoutes.transitionAdded(from, degree[from]-1, modCount);
+		if(reachability != null)
+			reachability.transitionAdded(from, degree[from]-1, modCount);
 		return this;
 	}
 	
@@ -142,13 +205,35 @@ public class Model {
 	 * @return the current model.
 	 */
 	public Model add(String state){
-		if(!stateMap.containsKey(state)){
-			this.stateMap.put(state, stateMap.size());
-			this.matrix.increase(1);
-		}
+		this.addState(state);
 		return this;
 	}
 	
+	/**
+	 * This function adds a state if it doesn't exist already.
+	 * @param state, the state to add.
+	 * @return the index of the state.
+	 */
+	private int addState(String state){
+		Integer existing = stateMap.get(state);
+		if(existing != null)
+			return existing;
+		int index = states.size();
+		if(index == edges.length){
+			edges = Arrays.copyOf(edges, index*2);
+			targets = Arrays.copyOf(targets, index*2);
+			degree = Arrays.copyOf(degree, index*2);
+		}
+		this.stateMap.put(state, index);
+		this.states.add(state);
+		modCount++;
+		if(shortestRoutes != null)
+			shortestRoutes.stateAdded(modCount);
+		if(reachability != null)
+			reachability.stateAdded(modCount);
+		return index;
+	}
+	
 	/**
 	 * This function is used to add multiple states at once.
 	 * @param s, the state to add.
@@ -176,7 +261,15 @@ public class Model {
 	 * @return a list of all transitions between the 2 states.
 	 */
 	public List<Transition> getTransitions(String from, String to){
-		return matrix.get(stateMap.get(from), stateMap.get(to));
+		int f = stateMap.get(from), t = stateMap.get(to);
+		List<Transition> toReturn = null;
+		for(int i = 0; i < degree[f]; i++)
+			if(targets[f][i] == t){
+				if(toReturn == null)
+					toReturn = new ArrayList<Transition>();
+				toReturn.add(edges[f][i]);
+			}
+		return toReturn;
 	}
 	
 	/**
@@ -187,15 +280,18 @@ public class Model {
 	 */
 	public String getState(String from, String transition){
 		Transition t = getTransition(from, transition); 
-		return t == null ? null : t.orgTo;
+		return t == null ? null : t.orgTo();
 	}
 	
+	/**
+	 * This function returns all transitions in the model, grouped by their origin state.
+	 * @return a list of all transitions.
+	 */
 	public List<Transition> getTransitions(){
-		
-		List<Transition> transitions = new ArrayList<Transition>();
-		for(List<Transition> list : matrix.asList())
-			if(list != null && list.size() > 0)
-				transitions.addAll(list);
+		List<Transition> transitions = new ArrayList<Transition>(transitionCount);
+		for(int s = 0; s < states.size(); s++)
+			for(int i = 0; i < degree[s]; i++)
+				transitions.add(edges[s][i]);
 		return transitions;
 	}
 	
@@ -206,12 +302,10 @@ public class Model {
 	 * @return the transition if it exists, null otherwise.
 	 */
 	public Transition getTransition(String from, String name){
-		for(List<Transition> ts : matrix.getRow(stateMap.get(from))){
-			if(ts != null)
-				for(Transition t : ts)
-					if(t.label.equals(name))
-						return t;
-		}
+		int s = stateMap.get(from);
+		for(int i = 0; i < degree[s]; i++)
+			if(edges[s][i].hasLabel(name))
+				return edges[s][i];
 		return null;
 	}
 	
@@ -221,61 +315,119 @@ public class Model {
 	 * @return a list of all transitions starting from state s.
 	 */
 	public List<Transition> getTransitionsFrom(String state){
-		List<Transition> toReturn = new ArrayList<Transition>();
-		for(List<Transition> ts : matrix.getRow(stateMap.get(state)))
-			if(ts != null)
-				toReturn.addAll(ts);
-		return toReturn.size() == 0 ? null : toReturn;
+		int s = stateMap.get(state);
+		if(degree[s] == 0)
+			return null;
+		return new ArrayList<Transition>(Arrays.asList(edges[s]).subList(0, degree[s]));
 	}
 	
 	/**
-	 * @TODO TEST THIS FUNCTION
-	 * @param from
-	 * @param to
-	 * @return
+	 * This function returns a shortest route between 2 states using a breadth first search over the outgoing transitions.
+	 * @param from, the name of the state to start.
+	 * @param to, the name of the state to reach.
+	 * @return a list of transitions that forms the route, or null if the state cannot be reached.
 	 */
 	public List<Transition> getRoute(String from, String to){
-		//generateMatrix();
-		Coord<Integer,Integer> origin = new Coord<Integer, Integer>(stateMap.get(from), stateMap.get(from));
-		Coord<Integer, Integer> goal   = new Coord<Integer, Integer>(stateMap.get(to), stateMap.get(to));
+		int origin = stateMap.get(from), goal = stateMap.get(to);
+		int[] parent = new int[states.size()], parentEdge = new int[states.size()], queue = new int[states.size()];
+		Arrays.fill(parent, -1);
+		parent[origin] = origin;
+		int head = 0, tail = 0;
+		queue[tail++] = origin;
+		while(head < tail && parent[goal] == -1){
+			int s = queue[head++];
+			for(int i = 0; i < degree[s]; i++){
+				int t = targets[s][i];
+				if(parent[t] == -1){
+					parent[t] = s;
+					parentEdge[t] = i;
+					queue[tail++] = t;
+				}
+			}
+		}
+		if(parent[goal] == -1)
+			return null;
 		ArrayList<Transition> route = new ArrayList<Transition>();
-		for(Coord<Integer,Integer> c : matrix.getRoute(goal, origin))
-			route.add(matrix.get(c).get(0)); //Always pick first transition in list (easy).
+		for(int s = goal; s != origin; s = parent[s])
+			route.add(edges[parent[s]][parentEdge[s]]);
+		Collections.reverse(route);
 		return route;
 	}
 	
+	/**
+	 * This function returns the shortest routes between all states, see AllPairsRoutes.
+	 * The routes are computed on the first call and kept up to date while states and transitions are added or filtered.
+	 * @return the shortest routes between all states.
+	 */
+	public AllPairsRoutes shortestRoutes(){
+		if(this.shortestRoutes == null)
+			this.shortestRoutes = new AllPairsRoutes(this);
+		else if(this.shortestRoutes.isStale())
+			this.shortestRoutes.rebuild();
+		return shortestRoutes;
+	}
+	
+	/**
+	 * This function returns a matrix containing a shortest route between every pair of states.
+	 * Building this matrix takes memory cubic in the amount of states, use shortestRoutes() instead where possible.
+	 * @return a matrix where cell (from, to) holds a shortest route, or null if there is none.
+	 */
+	@Deprecated
 	public Matrix<List<Transition>> floydWarshall(){
-		Matrix<List<Transition>> dist = new Matrix<List<Transition>>(matrix.getColumnAmount(),matrix.getRowAmount());
-		for(int i = 0; i < dist.getColumnAmount(); i++)
-			for(int j = 0; j < dist.getRowAmount(); j++)
-				if(matrix.get(j, i) != null && matrix.get(j, i).size()>0){
-					dist.set(new ArrayList<Transition>(), j,i);
-					dist.get(j,i).add(matrix.get(j, i).get(0));//Only add first transition in list (for convenience).
-				}
-		
-		for(int k = 0; k < dist.getRowAmount(); k++){
-			for(int i = 0; i < dist.getColumnAmount(); i++){
-				for(int j = 0; j < dist.getRowAmount(); j++){
-					if (dist.get(i,j) == null 
-							|| (!(dist.get(i, k) == null || dist.get(k, j) == null) 
-									&& dist.get(i, k).size() + dist.get(k,j).size() < dist.get(i,j).size())){
-						ArrayList<Transition> n = new ArrayList<Transition>();
-						n.addAll(dist.get(i,k) == null ? new ArrayList<Transition>() : dist.get(i, k));
-						n.addAll(dist.get(k,j) == null ? new ArrayList<Transition>() : dist.get(k, j));
-						dist.set(n, i,j);
-					}
-				}
-			}
-		}
-		this.shortestRoutes = dist;
+		AllPairsRoutes routes = this.shortestRoutes();
+		Matrix<List<Transition>> dist = new Matrix<List<Transition>>(states.size());
+		for(int i = 0; i < states.size(); i++)
+			for(int j = 0; j < states.size(); j++)
+				if(i != j)
+					dist.set(routes.route(i, j), i, j);
 		return dist;
 	}
 	
 	/**
-	 * Temp test function (for the floyd-warshall algorithm above).
+	 * This function returns the lengths of the shortest routes between all states, in state index order.
+	 * @return a matrix where cell (from, to) holds the amount of transitions on a shortest route, or IntMatrix.NONE if there is none.
+	 */
+	public IntMatrix getDistanceMatrix(){
+		AllPairsRoutes routes = this.shortestRoutes();
+		IntMatrix dist = new IntMatrix(states.size());
+		for(int i = 0; i < states.size(); i++)
+			for(int j = 0; j < states.size(); j++)
+				dist.set(routes.distance(i, j), i, j);
+		return dist;
+	}
+	
+	/**
+	 * This function returns the adjacency matrix of the model, in state index order.
+	 * The transitive closure of this matrix (BitMatrix.floydWarshall) has the states reachable in one or more steps.
+	 * @return a matrix where bit (from, to) is set if there is a transition from from to to.
+	 */
+	public BitMatrix getAdjacencyMatrix(){
+		BitMatrix adjacency = new BitMatrix(states.size());
+		for(int s = 0; s < states.size(); s++)
+			for(int i = 0; i < degree[s]; i++)
+				adjacency.set(true, s, targets[s][i]);
+		return adjacency;
+	}
+	
+	/**
+	 * This function computes which states can be reached in exactly the given amount of steps, from every state.
+	 * The adjacency matrix is raised to the power by repeated squaring, see BitMatrix.power.
+	 * @param steps, the amount of transitions (>=0).
+	 * @return a matrix where bit (from, to) is set if a route of exactly steps transitions leads from from to to.
+	 */
+	public BitMatrix getStepMatrix(int steps){
+		return this.getAdjacencyMatrix().power(steps);
+	}
+	
+	/**
+	 * Temp test function (for the shortest routes above).
 	 */
 	public void printAllShortestRoutes(){
-		System.out.println(floydWarshall());
+		AllPairsRoutes routes = this.shortestRoutes();
+		for(int i = 0; i < states.size(); i++)
+			for(int j = 0; j < states.size(); j++)
+				if(i != j && routes.distance(i, j) != AllPairsRoutes.UNREACHABLE)
+					System.out.println(states.get(i)+" -> "+states.get(j)+": "+routes.route(i, j));
 	}
 	
 	public List<Transition> getPathFromCalls(List<String> transitions){
@@ -288,114 +440,503 @@ public class Model {
 		List<Transition> toReturn = new ArrayList<Transition>();
 		
 		for(String trans : transitions){
-			//Transition t = this.getTransition(state, trans);
-			
-			for(List<Transition> ts : matrix.getRow(stateMap.get(state))){
-				if(ts != null)
-					for(Transition t : ts)
-						if(t.input.equals(trans)){
-							toReturn.add(t);
-							state = t.orgTo;
-							break;
-						}
+			int s = stateMap.get(state);
+			for(int i = 0; i < degree[s]; i++){
+				Transition t = edges[s][i];
+				if(trans.equals(t.input())){
+					toReturn.add(t);
+					state = t.orgTo();
+					break;
+				}
 			}
-			
 		}
 		return toReturn;
 	}
 	
 	/**
-	 * This function returns the shortest route between 2 states using the floyd warshall function.
-	 * To make sure you have the latest version of the shortest routes, call the floyd warshall function first.
+	 * This function replays many words from the start state in parallel and records the coverage in the transitions, see TraceReplay.
+	 * @param words, the words (lists of input names).
+	 * @param listener, receives the path or divergence point of every word (from multiple threads), may be null.
+	 * @return the totals of the replay.
+	 */
+	public TraceReplay.Result replay(Iterable<? extends List<String>> words, TraceReplay.Listener listener){
+		return new TraceReplay(this).replay(words, listener);
+	}
+
+	/**
+	 * This function returns the shortest route between 2 states using the all pairs shortest routes.
 	 * @param from, the name of the state to start.
 	 * @param to, the name of the state to reach.
-	 * @return a list of transitions that forms the shortest route between the states.
+	 * @return a list of transitions that forms the shortest route between the states, or null if there is none.
 	 */
 	public List<Transition> getShortestRoute(String from, String to){
-		if(this.shortestRoutes == null)
-			this.floydWarshall();
-		return shortestRoutes.get(this.stateMap.get(from), this.stateMap.get(to));
+		return this.shortestRoutes().route(this.stateMap.get(from), this.stateMap.get(to));
 	}
 	
+	/**
+	 * This function returns the cheapest route between 2 states, where the cost of every transition is given by a cost function.
+	 * For repeated queries with the same cost function, create a WeightedRoutes object once and reuse it.
+	 * @param from, the name of the state to start.
+	 * @param to, the name of the state to reach.
+	 * @param cost, the weight of a transition (>= 0), for example t -> 1.0 / (1 + t.calls) to prefer often used transitions.
+	 * @return a list of transitions that forms the cheapest route between the states, or null if there is none.
+	 */
+	public List<Transition> getWeightedRoute(String from, String to, ToDoubleFunction<Transition> cost){
+		return new WeightedRoutes(this, cost).route(from, to);
+	}
+	
+	/**
+	 * This function returns the splitting tree of the model, see SplittingTree.
+	 * The tree is kept until the model changes, so repeated queries don't rebuild it.
+	 * @return the splitting tree of the current model.
+	 */
+	public SplittingTree splittingTree(){
+		if(this.splittingTree == null || this.splittingTree.modCount() != modCount)
+			this.splittingTree = new SplittingTree(this);
+		return splittingTree;
+	}
+	
+	/**
+	 * This function returns the CTL model checker of the model, it is rebuilt after the model changed.
+	 * @return the checker.
+	 */
+	public CtlChecker modelChecker(){
+		if(this.checker == null || this.checker.modCount() != modCount)
+			this.checker = new CtlChecker(this);
+		return checker;
+	}
+	
+	/**
+	 * This function checks if the start state of the model satisfies a CTL formula, see CtlChecker.
+	 * @param f, the formula.
+	 * @return true if the formula holds in the start state.
+	 */
+	public boolean satisfies(CtlFormula f){
+		return this.modelChecker().holds(f);
+	}
+	
+	/**
+	 * This function returns a sequence of transitions from the given state whose outputs no other state produces on the same inputs.
+	 * @param state, the name of the state.
+	 * @return the transitions of the sequence (empty if the model has a single state), or null if no sequence was found.
+	 */
 	public ArrayList<Transition> getDistinguishingSequence(String state){
-		System.err.println("getDistinguishingSequence NOT IMPLEMENTED YET!");
-		return new ArrayList<Transition>();
+		SplittingTree tree = this.splittingTree();
+		int s = stateMap.get(state);
+		int[] word = tree.distinguishingSequence(s);
+		if(word == null)
+			return null;
+		ArrayList<Transition> sequence = new ArrayList<Transition>(word.length);
+		for(int a : word){
+			sequence.add(tree.compiled().transition(s, a));
+			s = tree.compiled().step(s, a);
+		}
+		return sequence;
+	}
+	
+	/**
+	 * This function returns a word of inputs on which 2 states give different outputs.
+	 * @param first, the name of a state.
+	 * @param second, the name of a state.
+	 * @return the inputs of the word, or null if the states are equivalent.
+	 */
+	public List<String> getSeparatingSequence(String first, String second){
+		SplittingTree tree = this.splittingTree();
+		int[] word = tree.separatingSequence(stateMap.get(first), stateMap.get(second));
+		if(word == null)
+			return null;
+		List<String> inputs = new ArrayList<String>(word.length);
+		for(int a : word)
+			inputs.add(tree.compiled().inputs().name(a));
+		return inputs;
+	}
+	
+	/**
+	 * This function returns the minimal model with the same behaviour, where equivalent states are merged (see Minimizer).
+	 * The current model is not changed.
+	 * @return the quotient model.
+	 */
+	public Model minimize(){
+		return Minimizer.minimize(this);
+	}
+	
+	/**
+	 * This function checks if the model behaves the same as another model from their start states, see Equivalence.
+	 * @param other, the model to compare with.
+	 * @return true if every input word gives the same outputs in both models.
+	 */
+	public boolean isEquivalent(Model other){
+		return Equivalence.equivalent(this, other);
+	}
+	
+	/**
+	 * This function finds a shortest input word on which the model and another model give different outputs, see Equivalence.
+	 * @param other, the model to compare with.
+	 * @return the inputs of the word, or null if the models are equivalent.
+	 */
+	public List<String> getCounterexample(Model other){
+		return Equivalence.counterexample(this, other);
+	}
+	
+	/**
+	 * This function computes which states and transitions changed from this model to a newer version, see ModelDiff.
+	 * @param after, the newer model.
+	 * @return the difference.
+	 */
+	public ModelDiff diff(Model after){
+		return new ModelDiff(this, after);
+	}
+	
+	/**
+	 * This function returns a lazy view of the synchronous product of this model with other models, see ProductModel.
+	 * @param others, the other components.
+	 * @return the product.
+	 */
+	public ProductModel product(Model... others){
+		Model[] components = new Model[others.length + 1];
+		components[0] = this;
+		System.arraycopy(others, 0, components, 1, others.length);
+		return new ProductModel(components);
+	}
+	
+	/**
+	 * This function returns a fingerprint of the behaviour of the model from its start state, see ModelDiff.fingerprint.
+	 * Equivalent models get the same fingerprint, so it can be used as a cache key. The fingerprint is cached until the model changes.
+	 * @return the fingerprint.
+	 */
+	public long fingerprint(){
+		if(this.fingerprintModCount != modCount || this.fingerprintStart != startStateIndex){
+			this.fingerprint = ModelDiff.fingerprint(this);
+			this.fingerprintModCount = modCount;
+			this.fingerprintStart = startStateIndex;
+		}
+		return fingerprint;
 	}
 	
+	/**
+	 * This function returns the reachability index (transitive closure) of the model, which is kept up to date while states and
+	 * transitions are added, and rebuilt after transitions were removed.
+	 * @return the index.
+	 */
+	public ReachabilityIndex reachability(){
+		if(this.reachability == null)
+			this.reachability = new ReachabilityIndex(this);
+		else if(this.reachability.isStale())
+			this.reachability.rebuild();
+		return reachability;
+	}
+	
+	/**
+	 * This function checks if a state can be reached from another state, with a single bit test in the reachability index.
+	 * @param from, the name of the state to start.
+	 * @param to, the name of the state to reach.
+	 * @return true if there is a route, every state can reach itself.
+	 */
+	public boolean isReachable(String from, String to){
+		return this.reachability().reachable(from, to);
+	}
+	
+	/**
+	 * This function returns the strongly connected components of the model, they are recomputed after the model changed.
+	 * @return the components.
+	 */
+	public StronglyConnectedComponents components(){
+		if(this.components == null || this.components.modCount() != modCount)
+			this.components = new StronglyConnectedComponents(this);
+		return components;
+	}
+	
+	/**
+	 * @return the names of the states that are reachable from the start state, in index order.
+	 */
+	public List<String> getReachableStates(){
+		List<String> reachable = new ArrayList<String>();
+		if(this.startState() == null)
+			return reachable;
+		long[] set = this.reachable(startStateIndex);
+		for(int s = 0; s < states.size(); s++)
+			if((set[s >>> 6] & (1L << s)) != 0)
+				reachable.add(states.get(s));
+		return reachable;
+	}
+	
+	/**
+	 * This function returns a copy of the model without the states that are unreachable from the start state.
+	 * Like in the copy constructor, the transitions are referenced.
+	 * @return the pruned copy.
+	 */
+	public Model pruneUnreachable(){
+		if(this.startState() == null)
+			return new Model(this);
+		return this.restrict(this.reachable(startStateIndex));
+	}
+	
+	/**
+	 * This function returns a copy of the model without its sink components: strongly connected components that no transition leaves,
+	 * such as dead end states and error states that only loop on themselves, unless they contain the start state.
+	 * Components that only lead to sink components become sink components of the copy, but they are kept.
+	 * Like in the copy constructor, the transitions are referenced.
+	 * @return the pruned copy.
+	 */
+	public Model pruneSinkComponents(){
+		StronglyConnectedComponents scc = this.components();
+		int start = this.startState() == null ? -1 : scc.componentOf(startStateIndex);
+		long[] keep = new long[(states.size() + 63) >>> 6];
+		for(int s = 0; s < states.size(); s++){
+			int c = scc.componentOf(s);
+			if(c == start || !scc.isSink(c))
+				keep[s >>> 6] |= 1L << s;
+		}
+		return this.restrict(keep);
+	}
+	
+	/**
+	 * This function compiles the model into a dense Mealy transition table for fast execution of input words.
+	 * @return the compiled model.
+	 */
+	public CompiledModel compile(){
+		return new CompiledModel(this);
+	}
+	
+	/**
+	 * Pretty printer for model, prints every state followed by its outgoing transitions.
+	 * @return pretty printed model.
+	 */
 	public String toString(){
-		return this.matrix.toString();
+		StringBuilder sb = new StringBuilder();
+		for(int s = 0; s < states.size(); s++){
+			sb.append(states.get(s)).append(':');
+			for(int i = 0; i < degree[s]; i++)
+				sb.append(' ').append(edges[s][i]).append(" -> ").append(states.get(targets[s][i])).append(i < degree[s]-1 ? "," : "");
+			sb.append('\n');
+		}
+		return sb.toString();
 	}
 	
+	/*-------------------------------|
+	|		  Edge access			 | 
+	|-------------------------------*/
+	
 	/**
-	 * This model initializes the Matrix and StateMap.
+	 * This function finds the states that are reachable from a state, with a depth first search over an explicit stack.
+	 * @param from, the index of the state.
+	 * @return the bitset of the reachable states, bit s of word s/64 is set if state s is reachable.
+	 */
+	long[] reachable(int from){
+		long[] set = new long[(states.size() + 63) >>> 6];
+		int[] stack = new int[states.size()];
+		int top = 0;
+		set[from >>> 6] |= 1L << from;
+		stack[top++] = from;
+		while(top > 0){
+			int s = stack[--top];
+			for(int i = 0; i < degree[s]; i++){
+				int t = targets[s][i];
+				if((set[t >>> 6] & (1L << t)) == 0){
+					set[t >>> 6] |= 1L << t;
+					stack[top++] = t;
+				}
+			}
+		}
+		return set;
+	}
+	
+	/**
+	 * This function returns a copy of the model with only the given states and the transitions between them, in the same order.
+	 * The transitions are referenced, like in the copy constructor.
+	 * @param keep, the bitset of the states to keep.
+	 * @return the copy.
+	 */
+	Model restrict(long[] keep){
+		Model m = new Model();
+		int n = states.size();
+		int[] index = new int[n];
+		for(int s = 0; s < n; s++){
+			index[s] = (keep[s >>> 6] & (1L << s)) != 0 ? m.states.size() : -1;
+			if(index[s] >= 0){
+				m.stateMap.put(states.get(s), m.states.size());
+				m.states.add(states.get(s));
+			}
+		}
+		int size = Math.max(m.states.size(), 1);
+		m.edges = new Transition[size][];
+		m.targets = new int[size][];
+		m.degree = new int[size];
+		for(int s = 0; s < n; s++){
+			int from = index[s];
+			if(from < 0 || degree[s] == 0)
+				continue;
+			Transition[] edges = new Transition[degree[s]];
+			int[] targets = new int[degree[s]];
+			int kept = 0;
+			for(int i = 0; i < degree[s]; i++){
+				if(index[this.targets[s][i]] >= 0){
+					edges[kept] = this.edges[s][i];
+					targets[kept++] = index[this.targets[s][i]];
+				}
+			}
+			m.edges[from] = edges;
+			m.targets[from] = targets;
+			m.degree[from] = kept;
+			m.transitionCount += kept;
+		}
+		m.startStateIndex = startStateIndex < n && index[startStateIndex] >= 0 ? index[startStateIndex] : Integer.MAX_VALUE;
+		m.functions.addAll(functions);
+		return m;
+	}
+	
+	/**
+	 * @return the amount of states in the model.
+	 */
+	int stateCount(){
+		return states.size();
+	}
+	
+	/**
+	 * @return the amount of transitions in the model.
+	 */
+	int transitionCount(){
+		return transitionCount;
+	}
+	
+	/**
+	 * @return the amount of changes to the states and transitions of the model so far.
+	 */
+	int modCount(){
+		return modCount;
+	}
+	
+	/**
+	 * @return the index of the start state.
+	 */
+	int startIndex(){
+		return startStateIndex;
+	}
+	
+	/**
+	 * @param name, the name of a state.
+	 * @return the index of the state, or -1 if no state with the given name exists.
+	 */
+	int indexOf(String name){
+		Integer index = stateMap.get(name);
+		return index == null ? -1 : index;
+	}
+	
+	/**
+	 * @param state, the index of a state.
+	 * @return the name of the state.
+	 */
+	String stateName(int state){
+		return states.get(state);
+	}
+	
+	/**
+	 * @param state, the index of a state.
+	 * @return the amount of transitions leaving the state.
+	 */
+	int outDegree(int state){
+		return degree[state];
+	}
+	
+	/**
+	 * @param state, the index of a state.
+	 * @param i, the position of the transition in the state's outgoing transitions (0 <= i < outDegree(state)).
+	 * @return the i'th transition leaving the state.
+	 */
+	Transition transition(int state, int i){
+		return edges[state][i];
+	}
+	
+	/**
+	 * @param state, the index of a state.
+	 * @param i, the position of the transition in the state's outgoing transitions (0 <= i < outDegree(state)).
+	 * @return the index of the target state of the i'th transition leaving the state.
+	 */
+	int target(int state, int i){
+		return targets[state][i];
+	}
+	
+	/**
+	 * This function grows the state tables so the given amount of states fits without growing again.
+	 * @param states, the expected amount of states.
+	 */
+	void ensureCapacity(int states){
+		if(states <= edges.length)
+			return;
+		edges = Arrays.copyOf(edges, states);
+		targets = Arrays.copyOf(targets, states);
+		degree = Arrays.copyOf(degree, states);
+		if(this.states.isEmpty()){
+			this.stateMap = new HashMap<String,Integer>(states / 3 * 4 + 16);
+			this.states = new ArrayList<String>(states);
+		}
+	}
+	
+	/**
+	 * This model initializes the state tables.
 	 * @param states a list of all states (names).
 	 */
 	private void initializeStates(List<String> states){
 		for(String s : states){
-			stateMap.put(s,stateMap.size());
+			this.add(s);
 		}
-		matrix = new Matrix<List<Transition>>(stateMap.size());
 	}
 	
 	/**
 	 * This function fills the model using the input file.
-	 * Currently only input files of the .DOT format as generated by LearnLib are accepted.
+	 * Files in the .DOT format are accepted, see DotParser for the supported syntax.
 	 * @param reader, the reader containing the .DOT file.
+	 * @throws IOException when the file could not be read or is malformed.
 	 */
 	public Model fromDotFile(Reader reader) throws IOException{
-		BufferedReader br = new BufferedReader(reader);
-		String startState = null;
-		/* read input and extract transitions */
-		    for(String line; (line = br.readLine()) != null; ) {
-		        if(line.contains("->") && !line.contains("__start")){
-		        	Transition t = this.parseTransitionLine(line);
-		        	if(t != null){
-		        		this.add(t);
-		        	}else{
-		        		return null;
-		        	}
-		        }else if(line.contains("->") && line.contains("__start")){
-		        	startState = line.split("->")[1].trim();
-		        	this.setStartState(startState);
-		        }
-		    }
-		return this;
+		return DotParser.parse(reader, this);
+	}
+	
+	/**
+	 * This function fills the model using the input file.
+	 * @param file, the path of the .DOT file.
+	 * @param parallel, weather the file should be memory mapped and parsed in parallel chunks.
+	 * @throws IOException when the file could not be read or is malformed.
+	 */
+	public Model fromDotFile(Path file, boolean parallel) throws IOException{
+		return DotParser.parse(file, this, parallel);
+	}
+	
+	/**
+	 * This function fills the model using a binary snapshot written by toSnapshot.
+	 * To query a large snapshot without loading it, use ModelSnapshot.open instead.
+	 * @param file, the path of the snapshot.
+	 * @throws IOException when the file could not be read or is not a (supported) snapshot.
+	 */
+	public Model fromSnapshot(Path file) throws IOException{
+		return ModelSnapshot.open(file).toModel(this);
+	}
+	
+	/**
+	 * This function writes the model to a binary snapshot, see ModelSnapshot for the format.
+	 * @param file, the path of the snapshot.
+	 * @throws IOException when the file could not be written.
+	 */
+	public void toSnapshot(Path file) throws IOException{
+		ModelSnapshot.write(this, file);
 	}
 	
-	@Override
 	/**
 	 * This writes the model to a .DOT file.
 	 * @param writer, the Writer for the .DOT file.
 	 */
 	public void toDotFile(Writer writer) throws Exception{
-		writer.write("digraph g {\n__start0 [label=\"\" shape=\"none\"]\n");
-		for(String s : this.getStates()){
-			writer.write(String.format("    %s [shape=\"circle\" label=\"%s\"];\n", s, s));
-		}
-		for(Transition t : this.getTransitions()){
-			writer.write(String.format("    s%s -> s%s [label=\"%s\"];", t.orgFrom, t.orgTo, (t.label != null ? t.label : (t.input+" / "+t.output))));
-		}
-		writer.write(String.format("__start0 -> s%s;\n}", this.startState()));
+		ModelExporter.export(this, ModelExporter.Format.DOT, writer);
 	}
 	
 	/**
-	 * This function parses a .dot file transition line into a Transition.
-	 * @param line, the line in the .dot file containing the transition.
-	 * @return the parsed Transition.
+	 * This function streams the model in the given format, see ModelExporter for the supported formats.
+	 * @param format, the format to write.
+	 * @param out, the appendable to write to.
+	 * @throws IOException when the appendable could not be written to.
 	 */
-	private Transition parseTransitionLine(String line){
-		try{
-			String[] temp = line.split("->");
-			int from = Integer.parseInt(temp[0].trim().substring(1));
-			temp = temp[1].split("\\[");
-			int to = Integer.parseInt(temp[0].split(";")[0].trim().substring(1));
-			String input = temp[1].split("\\/")[0].split("\"")[1].trim();
-			String output = temp[1].split("\\/")[1].split("\"")[0].trim();
-			return new Transition(from, to, input, output);
-			}catch(Exception e){
-				System.err.println("Could not extract transition from: \""+line+"\"");
-			}
-		return null;
+	public void export(ModelExporter.Format format, Appendable out) throws IOException{
+		ModelExporter.export(this, format, out);
 	}
 	
 	/*-------------------------------|
@@ -412,14 +953,38 @@ public class Model {
 		Model m = this;
 		if(copy)
 			m = new Model(this);
-		int x=-1,y=-1;
-		for(List<List<Transition>> l : m.matrix.getInnerList()){
-			x++;
-			for(List<Transition> ts : l){
-				if(ts != null)
-					m.matrix.set(ts.stream().filter(p).collect(Collectors.<Transition>toList()), y, x);
+		int removed = 0;
+		boolean changed = false;
+		int[] removedFrom = new int[INITIAL_DEGREE], removedTo = new int[INITIAL_DEGREE];
+		for(int s = 0; s < m.states.size(); s++){
+			int kept = 0;
+			for(int i = 0; i < m.degree[s]; i++){
+				if(p.test(m.edges[s][i])){
+					m.edges[s][kept] = m.edges[s][i];
+					m.targets[s][kept] = m.targets[s][i];
+					kept++;
+				}else if(m.shortestRoutes != null){
+					if(removed == removedFrom.length){
+						removedFrom = Arrays.copyOf(removedFrom, removed*2);
+						removedTo = Arrays.copyOf(removedTo, removed*2);
+					}
+					removedFrom[removed] = s;
+					removedTo[removed++] = m.targets[s][i];
+				}
+			}
+			for(int i = kept; i < m.degree[s]; i++)
+				m.edges[s][i] = null;
+			if(kept < m.degree[s]){
+				m.transitionCount -= m.degree[s] - kept;
+				m.degree[s] = kept;
+				changed = true;
 			}
 		}
+		if(changed){
+			m.modCount++;
+			if(m.shortestRoutes != null)
+				m.shortestRoutes.transitionsRemoved(removedFrom, removedTo, removed, m.modCount);
+		}
 		return m;
 	}
 	
@@ -0,0 +1,218 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class builds a Model in bulk. States get an index when they are added, and transitions are added between state indices,
+ * one at a time or in batches of parallel arrays. The tables are pre-sized from the expected amounts and grow geometrically,
+ * and build() sorts the transitions by origin state with a counting sort into edge arrays of the exact size,
+ * so building a model with n states and m transitions takes O(n + m) time, without the per-transition bookkeeping of Model.add.
+ * The transitions of a state keep the order in which they were added.
+ * @author Gijs van der Meijde
+ */
+public class ModelBuilder {
+	private final Map<String,Integer> stateMap;
+	private final List<String> states;
+	private int[] from, to;
+	private Transition[] transitions;
+	private int transitionCount = 0;
+	private int startState = 0;
+
+	/**
+	 * Default constructor.
+	 */
+	public ModelBuilder(){
+		this(16, 16);
+	}
+
+	/**
+	 * Constructor that pre-sizes the tables, more states and transitions can still be added.
+	 * @param expectedStates, the expected amount of states.
+	 * @param expectedTransitions, the expected amount of transitions.
+	 */
+	public ModelBuilder(int expectedStates, int expectedTransitions){
+		if(expectedStates < 0 || expectedTransitions < 0)
+			throw new IllegalArgumentException(String.format("Negative amount of states (%d) or transitions (%d).", expectedStates, expectedTransitions));
+		this.stateMap = new HashMap<String,Integer>((int) Math.min(Integer.MAX_VALUE, expectedStates / 3L * 4 + 16));
+		this.states = new ArrayList<String>(expectedStates);
+		this.from = new int[expectedTransitions];
+		this.to = new int[expectedTransitions];
+		this.transitions = new Transition[expectedTransitions];
+	}
+
+	/**
+	 * This function adds a state if it doesn't exist already.
+	 * @param name, the name of the state.
+	 * @return the index of the state.
+	 */
+	public int state(String name){
+		Integer existing = stateMap.get(name);
+		if(existing != null)
+			return existing;
+		int index = states.size();
+		stateMap.put(name, index);
+		states.add(name);
+		return index;
+	}
+
+	/**
+	 * This function adds multiple states at once.
+	 * @param names, the names of the states.
+	 * @return the indices of the states.
+	 */
+	public int[] states(List<String> names){
+		int[] indices = new int[names.size()];
+		for(int i = 0; i < indices.length; i++)
+			indices[i] = state(names.get(i));
+		return indices;
+	}
+
+	/**
+	 * @return the amount of states added so far.
+	 */
+	public int stateCount(){
+		return states.size();
+	}
+
+	/**
+	 * @return the amount of transitions added so far.
+	 */
+	public int transitionCount(){
+		return transitionCount;
+	}
+
+	/**
+	 * This function adds a transition between two states that were added before.
+	 * @param from, the index of the origin state.
+	 * @param to, the index of the target state.
+	 * @param input, the input of the transition.
+	 * @param output, the output of the transition.
+	 * @return the current builder.
+	 */
+	public ModelBuilder transition(int from, int to, String input, String output){
+		check(from, to);
+		return add(from, to, new Transition(states.get(from), states.get(to), input, output));
+	}
+
+	/**
+	 * This function adds a transition, and its states if needed.
+	 * @param t, the transition.
+	 * @return the current builder.
+	 */
+	public ModelBuilder transition(Transition t){
+		return add(state(t.orgFrom()), state(t.orgTo()), t);
+	}
+
+	/**
+	 * This function adds a batch of transitions between states that were added before, transition i goes from from[i] to to[i].
+	 * @param from, the indices of the origin states.
+	 * @param to, the indices of the target states.
+	 * @param inputs, the inputs of the transitions.
+	 * @param outputs, the outputs of the transitions.
+	 * @param count, the amount of transitions to add from the start of the arrays.
+	 * @return the current builder.
+	 */
+	public ModelBuilder transitions(int[] from, int[] to, String[] inputs, String[] outputs, int count){
+		if(count > from.length || count > to.length || count > inputs.length || count > outputs.length)
+			throw new IllegalArgumentException(String.format("Batch of %d transitions is longer than its arrays.", count));
+		reserve(count);
+		for(int i = 0; i < count; i++)
+			transition(from[i], to[i], inputs[i], outputs[i]);
+		return this;
+	}
+
+	/**
+	 * This function adds a batch of transitions, and their states if needed.
+	 * @param transitions, the transitions.
+	 * @return the current builder.
+	 */
+	public ModelBuilder transitions(List<Transition> transitions){
+		reserve(transitions.size());
+		for(Transition t : transitions)
+			transition(t);
+		return this;
+	}
+
+	/**
+	 * This function sets the start state, the first state is the start state if none is set.
+	 * @param state, the index of the state.
+	 * @return the current builder.
+	 */
+	public ModelBuilder startState(int state){
+		check(state, state);
+		this.startState = state;
+		return this;
+	}
+
+	/**
+	 * This function sets the start state, and adds it if needed.
+	 * @param name, the name of the state.
+	 * @return the current builder.
+	 */
+	public ModelBuilder startState(String name){
+		return startState(state(name));
+	}
+
+	/**
+	 * This function builds the model, the builder can be used to add more and build again.
+	 * The model references the transitions, like the copy constructor of Model.
+	 * @return the model.
+	 */
+	public Model build(){
+		int n = states.size();
+		int[] degree = new int[Math.max(n, 1)];
+		for(int e = 0; e < transitionCount; e++)
+			degree[from[e]]++;
+		Transition[][] edges = new Transition[degree.length][];
+		int[][] targets = new int[degree.length][];
+		for(int s = 0; s < n; s++){
+			if(degree[s] > 0){
+				edges[s] = new Transition[degree[s]];
+				targets[s] = new int[degree[s]];
+			}
+		}
+		int[] fill = new int[degree.length];
+		for(int e = 0; e < transitionCount; e++){
+			int s = from[e];
+			edges[s][fill[s]] = transitions[e];
+			targets[s][fill[s]++] = to[e];
+		}
+		return new Model(new ArrayList<String>(states), new HashMap<String,Integer>(stateMap), edges, targets, degree, transitionCount, startState);
+	}
+
+	/*--------------------|
+	|  PRIVATE FUNCTIONS  |
+	|--------------------*/
+
+	private ModelBuilder add(int from, int to, Transition t){
+		reserve(1);
+		this.from[transitionCount] = from;
+		this.to[transitionCount] = to;
+		this.transitions[transitionCount++] = t;
+		return this;
+	}
+
+	/**
+	 * This function makes room for the given amount of transitions, the tables at least double when they grow.
+	 */
+	private void reserve(int count){
+		long needed = (long) transitionCount + count;
+		if(needed <= from.length)
+			return;
+		if(needed > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException(String.format("Cannot store %d transitions.", needed));
+		int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, from.length * 2L));
+		from = Arrays.copyOf(from, capacity);
+		to = Arrays.copyOf(to, capacity);
+		transitions = Arrays.copyOf(transitions, capacity);
+	}
+
+	private void check(int from, int to){
+		if(from < 0 || from >= states.size() || to < 0 || to >= states.size())
+			throw new IllegalArgumentException(String.format("State %d does not exist!", from < 0 || from >= states.size() ? from : to));
+	}
+}
@@ -0,0 +1,370 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class is the structural difference between 2 versions of a Model, for example between 2 iterations of a learner.
+ * States are matched by behaviour instead of by name, since a learner renumbers its states:
+ * the states of both models are partitioned together into classes of equivalent states (Hopcroft refinement over the disjoint union),
+ * so states with the same future outputs are in the same class. The start states are matched first, then every class with
+ * exactly one state of each model, and from the matched pairs the matching is propagated over transitions with the same input
+ * (this matches the states in front of a change, whose futures differ): forward to the targets, and backward to the sources
+ * if both states have a single unmatched predecessor with that input. Then remaining states of the same class are paired,
+ * and those pairs are propagated as well.
+ * For every state and input the amount and the xor of the unmatched predecessors are kept, so the single unmatched predecessor
+ * is known in constant time. Matching a state only changes these for the cells of its own targets, so only those cells
+ * are checked again (a worklist), and the whole propagation takes O(m) time.
+ * Transitions of matched states are compared per input, transitions of unmatched states are added or removed.
+ * The partition takes O(m log n) time for m transitions and n states.
+ * The models are compiled first, so for every state and input only the first transition is used.
+ * @author Gijs van der Meijde
+ */
+public class ModelDiff {
+	private final CompiledModel a, b;
+	private final int na, nb, k;
+	private final int[] nextA, nextB, outA, outB;	/* Tables over the union of both alphabets, -1 if undefined */
+	private final int[] localA, localB;	/* Input id in the compiled model per input of the union, -1 if missing */
+	private final int[] matchA, matchB;	/* Matched state in the other model, -1 if unmatched */
+	private int[] unmatchedA, unmatchedB, xorA, xorB;	/* Per cell t*k+c: the amount and the xor of the unmatched states with a c-transition to t */
+	private int[] queue, cells;	/* Matched states of the old model to propagate forward, cells t*k+c of the old model to check backward */
+	private int head, tail, cellCount;
+
+	private final List<String> addedStates = new ArrayList<String>(), removedStates = new ArrayList<String>();
+	private final List<Transition> addedTransitions = new ArrayList<Transition>(), removedTransitions = new ArrayList<Transition>();
+	private final List<Tuple<Transition,Transition>> redirected = new ArrayList<Tuple<Transition,Transition>>();
+	private final List<Tuple<Transition,Transition>> changedOutputs = new ArrayList<Tuple<Transition,Transition>>();
+
+	/**
+	 * Constructor that computes the difference.
+	 * @param before, the old model.
+	 * @param after, the new model.
+	 */
+	public ModelDiff(Model before, Model after){
+		this.a = before.compile();
+		this.b = after.compile();
+		this.na = a.stateCount();
+		this.nb = b.stateCount();
+		TreeSet<String> names = new TreeSet<String>();
+		for(int i = 0; i < a.inputCount(); i++)
+			names.add(a.inputs().name(i));
+		for(int i = 0; i < b.inputCount(); i++)
+			names.add(b.inputs().name(i));
+		SymbolTable alphabet = new SymbolTable(), outputs = new SymbolTable();
+		for(String name : names)
+			alphabet.intern(name);
+		this.k = alphabet.size();
+		this.localA = new int[k];
+		this.localB = new int[k];
+		for(int i = 0; i < k; i++){
+			localA[i] = a.inputs().get(alphabet.name(i));
+			localB[i] = b.inputs().get(alphabet.name(i));
+		}
+		this.nextA = new int[na * k];
+		this.outA = new int[nextA.length];
+		this.nextB = new int[nb * k];
+		this.outB = new int[nextB.length];
+		Equivalence.table(a, alphabet, outputs, nextA, outA);
+		Equivalence.table(b, alphabet, outputs, nextB, outB);
+
+		//Partition the disjoint union, the states of the new model come after the states of the old model.
+		int[] next = Arrays.copyOf(nextA, (na + nb) * k), out = Arrays.copyOf(outA, next.length);
+		for(int c = 0; c < nextB.length; c++){
+			next[nextA.length + c] = nextB[c] < 0 ? -1 : na + nextB[c];
+			out[nextA.length + c] = outB[c];
+		}
+		int[] classOf = Minimizer.partition(na + nb, k, next, out, outputs.size());
+
+		this.matchA = new int[na];
+		this.matchB = new int[nb];
+		Arrays.fill(matchA, -1);
+		Arrays.fill(matchB, -1);
+		this.unmatchedA = new int[na*k];
+		this.xorA = new int[na*k];
+		predecessors(nextA, unmatchedA, xorA);
+		this.unmatchedB = new int[nb*k];
+		this.xorB = new int[nb*k];
+		predecessors(nextB, unmatchedB, xorB);
+		match(classOf);
+		this.unmatchedA = unmatchedB = xorA = xorB = queue = cells = null;
+		compare();
+	}
+
+	/**
+	 * This function matches the states of both models.
+	 */
+	private void match(int[] classOf){
+		int classes = 0;
+		for(int c : classOf)
+			classes = Math.max(classes, c + 1);
+		int[] countA = new int[classes], countB = new int[classes], memberA = new int[classes], memberB = new int[classes];
+		for(int s = 0; s < na; s++){
+			countA[classOf[s]]++;
+			memberA[classOf[s]] = s;
+		}
+		for(int s = 0; s < nb; s++){
+			countB[classOf[na+s]]++;
+			memberB[classOf[na+s]] = s;
+		}
+
+		this.queue = new int[Math.min(na, nb)];
+		this.cells = new int[16];
+		if(a.startState() >= 0 && b.startState() >= 0)
+			pair(a.startState(), b.startState());
+		for(int c = 0; c < classes; c++)
+			if(countA[c] == 1 && countB[c] == 1 && matchA[memberA[c]] < 0 && matchB[memberB[c]] < 0)
+				pair(memberA[c], memberB[c]);
+		propagate();
+
+		//Pair the remaining states of the same class, in order of their index.
+		int[] firstB = new int[classes], following = new int[nb];
+		Arrays.fill(firstB, -1);
+		for(int s = nb - 1; s >= 0; s--){
+			if(matchB[s] >= 0)
+				continue;
+			following[s] = firstB[classOf[na+s]];
+			firstB[classOf[na+s]] = s;
+		}
+		for(int s = 0; s < na; s++){
+			int c = classOf[s];
+			if(matchA[s] >= 0 || firstB[c] < 0)
+				continue;
+			int t = firstB[c];
+			firstB[c] = following[t];
+			if(matchB[t] < 0)
+				pair(s, t);
+		}
+		propagate();
+	}
+
+	/**
+	 * This function matches two states, removes them from the unmatched predecessors of their targets,
+	 * and queues the cells of matched targets that may now have a single unmatched predecessor.
+	 */
+	private void pair(int s, int t){
+		matchA[s] = t;
+		matchB[t] = s;
+		queue[tail++] = s;
+		for(int c = 0; c < k; c++){
+			int p = nextA[s*k+c];
+			if(p >= 0){
+				unmatchedA[p*k+c]--;
+				xorA[p*k+c] ^= s;
+				if(matchA[p] >= 0)
+					check(p*k+c);
+			}
+			int q = nextB[t*k+c];
+			if(q >= 0){
+				unmatchedB[q*k+c]--;
+				xorB[q*k+c] ^= t;
+				if(matchB[q] >= 0)
+					check(matchB[q]*k+c);
+			}
+		}
+	}
+
+	private void check(int cell){
+		if(cellCount == cells.length)
+			cells = Arrays.copyOf(cells, cellCount*2);
+		cells[cellCount++] = cell;
+	}
+
+	/**
+	 * This function matches the unmatched targets of transitions with the same input from matched states, breadth first,
+	 * and the sources of transitions with the same input to matched states if they are the only unmatched ones,
+	 * until there is nothing left to propagate.
+	 */
+	private void propagate(){
+		while(head < tail || cellCount > 0){
+			if(head < tail){
+				int p = queue[head++], q = matchA[p];
+				for(int c = 0; c < k; c++){
+					int p2 = nextA[p*k+c], q2 = nextB[q*k+c];
+					if(p2 >= 0 && q2 >= 0 && matchA[p2] < 0 && matchB[q2] < 0)
+						pair(p2, q2);
+				}
+				for(int c = 0; c < k; c++)
+					backward(p, q, c);
+			}else{
+				int cell = cells[--cellCount];
+				int p = cell / k;
+				backward(p, matchA[p], cell % k);
+			}
+		}
+	}
+
+	/**
+	 * This function matches the sources of the c-transitions to p and q if both have a single unmatched one.
+	 */
+	private void backward(int p, int q, int c){
+		if(unmatchedA[p*k+c] == 1 && unmatchedB[q*k+c] == 1){
+			int p2 = xorA[p*k+c], q2 = xorB[q*k+c];
+			if(matchA[p2] < 0 && matchB[q2] < 0)
+				pair(p2, q2);
+		}
+	}
+
+	/**
+	 * This function counts the predecessors of every cell of a transition table, all states are unmatched at the start.
+	 * @param next, the transition table.
+	 * @param unmatched, filled with the amount of predecessors of every cell.
+	 * @param xor, filled with the xor of the predecessors of every cell.
+	 */
+	private void predecessors(int[] next, int[] unmatched, int[] xor){
+		for(int c = 0; c < next.length; c++){
+			if(next[c] >= 0){
+				unmatched[next[c]*k+c%k]++;
+				xor[next[c]*k+c%k] ^= c/k;
+			}
+		}
+	}
+
+	/**
+	 * This function compares the transitions of both models under the matching.
+	 */
+	private void compare(){
+		for(int p = 0; p < na; p++){
+			int q = matchA[p];
+			if(q < 0)
+				removedStates.add(a.stateName(p));
+			for(int c = 0; c < k; c++){
+				int p2 = nextA[p*k+c], q2 = q < 0 ? -1 : nextB[q*k+c];
+				if(p2 < 0 && q2 < 0)
+					continue;
+				Transition before = a.transition(p, localA[c]), after = q < 0 ? null : b.transition(q, localB[c]);
+				if(q2 < 0)
+					removedTransitions.add(before);
+				else if(p2 < 0)
+					addedTransitions.add(after);
+				else{
+					if(matchA[p2] != q2)
+						redirected.add(new Tuple<Transition,Transition>(before, after));
+					if(outA[p*k+c] != outB[q*k+c])
+						changedOutputs.add(new Tuple<Transition,Transition>(before, after));
+				}
+			}
+		}
+		for(int q = 0; q < nb; q++){
+			if(matchB[q] >= 0)
+				continue;
+			addedStates.add(b.stateName(q));
+			for(int c = 0; c < k; c++)
+				if(nextB[q*k+c] >= 0)
+					addedTransitions.add(b.transition(q, localB[c]));
+		}
+	}
+
+	/**
+	 * This function computes a fingerprint of the behaviour of a model from its start state, that can be used as a cache key.
+	 * Models that are equivalent (on their union alphabet, with undefined inputs as a distinct output) get the same fingerprint,
+	 * regardless of state names, state order, unreachable states and equivalent duplicate states.
+	 * The fingerprint is a hash over the minimal model, whose states are numbered breadth first with the inputs in name order.
+	 * @param m, a model with a start state.
+	 * @return the fingerprint.
+	 */
+	public static long fingerprint(Model m){
+		if(m.startState() == null)
+			throw new IllegalArgumentException("Start state not set!");
+		CompiledModel compiled = m.compile();
+		int n = compiled.stateCount(), k = compiled.inputCount();
+		SymbolTable outputs = new SymbolTable();
+		int[] next = new int[n * k], out = new int[n * k];
+		Equivalence.table(compiled, compiled.inputs(), outputs, next, out);
+		int[] classOf = Minimizer.partition(n, k, next, out, outputs.size());
+		int classes = 0;
+		for(int c : classOf)
+			classes = Math.max(classes, c + 1);
+
+		int[] number = new int[classes], queue = new int[classes];
+		Arrays.fill(number, -1);
+		int head = 0, tail = 0;
+		number[classOf[compiled.startState()]] = tail;
+		queue[tail++] = compiled.startState();
+		long hash = 0;
+		while(head < tail){
+			int s = queue[head++];
+			for(int c = 0; c < k; c++){
+				int t = next[s*k+c];
+				if(t < 0)
+					continue;
+				if(number[classOf[t]] < 0){
+					number[classOf[t]] = tail;
+					queue[tail++] = t;
+				}
+				hash = mix(hash, compiled.inputs().name(c).hashCode());
+				hash = mix(hash, outputs.name(out[s*k+c]).hashCode());
+				hash = mix(hash, number[classOf[t]]);
+			}
+			hash = mix(hash, -1);
+		}
+		return hash ^ (hash >>> 31);
+	}
+
+	private static long mix(long hash, long x){
+		hash ^= x * 0x9E3779B97F4A7C15L;
+		return Long.rotateLeft(hash, 29) * 0xBF58476D1CE4E5B9L;
+	}
+
+	/**
+	 * @param state, the name of a state of the old model.
+	 * @return the name of the matched state of the new model, or null if the state was removed.
+	 */
+	public String match(String state){
+		for(int s = 0; s < na; s++)
+			if(a.stateName(s).equals(state))
+				return matchA[s] < 0 ? null : b.stateName(matchA[s]);
+		throw new IllegalArgumentException(String.format("State %s does not exist!", state));
+	}
+
+	/**
+	 * @return the names of the states of the new model that match no state of the old model.
+	 */
+	public List<String> addedStates(){
+		return addedStates;
+	}
+
+	/**
+	 * @return the names of the states of the old model that match no state of the new model.
+	 */
+	public List<String> removedStates(){
+		return removedStates;
+	}
+
+	/**
+	 * @return the transitions of the new model whose input is undefined in the matched state of the old model.
+	 */
+	public List<Transition> addedTransitions(){
+		return addedTransitions;
+	}
+
+	/**
+	 * @return the transitions of the old model whose input is undefined in the matched state of the new model.
+	 */
+	public List<Transition> removedTransitions(){
+		return removedTransitions;
+	}
+
+	/**
+	 * @return pairs of an old and a new transition with the same input from matched states, whose targets are not matched.
+	 */
+	public List<Tuple<Transition,Transition>> redirectedTransitions(){
+		return redirected;
+	}
+
+	/**
+	 * @return pairs of an old and a new transition with the same input from matched states, with different outputs.
+	 */
+	public List<Tuple<Transition,Transition>> changedOutputs(){
+		return changedOutputs;
+	}
+
+	/**
+	 * @return true if the models only differ in state names.
+	 */
+	public boolean isEmpty(){
+		return addedStates.isEmpty() && removedStates.isEmpty() && addedTransitions.isEmpty() && removedTransitions.isEmpty()
+				&& redirected.isEmpty() && changedOutputs.isEmpty();
+	}
+}
@@ -0,0 +1,424 @@
+package convertion.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class streams a Model to a text format.
+ * The model is written state by state straight from its edge tables through a bounded buffer, so no copy of the model is built.
+ * Supported formats:
+ * DOT		the format generated by LearnLib, which can be read back with Model.fromDotFile.
+ * AUT		the Aldebaran format used by CADP and mCRL2, states are numbered by their index.
+ * GRAPHML	GraphML with the state name and transition input, output and label as data keys, a null output has no output key.
+ * JSON		an object with the start state, the list of states and the list of transitions.
+ * DOT and AUT only have a label per transition, so a transition with an input and a null output is written with its label,
+ * which is only the input. Read back with DotParser it becomes a transition with that label and no input / output form,
+ * while an empty output is written as "input / " and read back as the output "".
+ * @author Gijs van der Meijde
+ */
+public class ModelExporter {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String[] DOT_KEYWORDS = {"node", "edge", "graph", "digraph", "subgraph", "strict"};
+
+	public enum Format { DOT, AUT, GRAPHML, JSON }
+
+	private final char[] buf = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private final Appendable appendable;
+	private final Writer writer;
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final ByteBuffer bytes;
+
+	private ModelExporter(Appendable appendable){
+		this.appendable = appendable;
+		this.writer = appendable instanceof Writer ? (Writer) appendable : null;
+		this.channel = null;
+		this.encoder = null;
+		this.bytes = null;
+	}
+
+	private ModelExporter(WritableByteChannel channel){
+		this.appendable = null;
+		this.writer = null;
+		this.channel = channel;
+		this.encoder = StandardCharsets.UTF_8.newEncoder();
+		this.bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+	}
+
+	/**
+	 * This function writes the model in the given format.
+	 * The appendable is not flushed or closed.
+	 * @param m, the model to export.
+	 * @param format, the format to write.
+	 * @param out, the appendable to write to.
+	 * @throws IOException when the appendable could not be written to.
+	 */
+	public static void export(Model m, Format format, Appendable out) throws IOException{
+		new ModelExporter(out).write(m, format);
+	}
+
+	/**
+	 * This function writes the model in the given format as UTF-8.
+	 * The channel is not closed.
+	 * @param m, the model to export.
+	 * @param format, the format to write.
+	 * @param out, the channel to write to.
+	 * @throws IOException when the channel could not be written to.
+	 */
+	public static void export(Model m, Format format, WritableByteChannel out) throws IOException{
+		new ModelExporter(out).write(m, format);
+	}
+
+	private void write(Model m, Format format) throws IOException{
+		switch(format){
+		case DOT:
+			dot(m);
+			break;
+		case AUT:
+			aut(m);
+			break;
+		case GRAPHML:
+			graphml(m);
+			break;
+		case JSON:
+			json(m);
+			break;
+		}
+		flush();
+	}
+
+	/*--------------------|
+	|       FORMATS       |
+	|--------------------*/
+
+	private void dot(Model m) throws IOException{
+		out("digraph g {\n\n");
+		for(int s = 0; s < m.stateCount(); s++){
+			out('\t');
+			dotId(m.stateName(s));
+			out(" [shape=\"circle\" label=\"");
+			dotEscaped(m.stateName(s));
+			out("\"];\n");
+		}
+		for(int s = 0; s < m.stateCount(); s++){
+			for(int i = 0; i < m.outDegree(s); i++){
+				Transition t = m.transition(s, i);
+				out('\t');
+				dotId(m.stateName(s));
+				out(" -> ");
+				dotId(m.stateName(m.target(s, i)));
+				out(" [label=\"");
+				if(t.input() != null && t.output() != null){
+					dotEscaped(t.input());
+					out(" / ");
+					dotEscaped(t.output());
+				}else{
+					dotEscaped(t.label());
+				}
+				out("\"];\n");
+			}
+		}
+		if(m.startState() != null){
+			out("\n__start0 [label=\"\" shape=\"none\"];\n__start0 -> ");
+			dotId(m.startState());
+			out(";\n");
+		}
+		out("\n}\n");
+	}
+
+	private void aut(Model m) throws IOException{
+		out("des (");
+		out(m.startState() == null ? 0 : m.startIndex());
+		out(", ");
+		out(m.transitionCount());
+		out(", ");
+		out(m.stateCount());
+		out(")\n");
+		for(int s = 0; s < m.stateCount(); s++){
+			for(int i = 0; i < m.outDegree(s); i++){
+				Transition t = m.transition(s, i);
+				out('(');
+				out(s);
+				out(", \"");
+				if(t.input() != null && t.output() != null){
+					autEscaped(t.input());
+					out(" / ");
+					autEscaped(t.output());
+				}else{
+					autEscaped(t.label());
+				}
+				out("\", ");
+				out(m.target(s, i));
+				out(")\n");
+			}
+		}
+	}
+
+	private void graphml(Model m) throws IOException{
+		out("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+		out("  <key id=\"name\" for=\"node\" attr.name=\"name\" attr.type=\"string\"/>\n");
+		out("  <key id=\"start\" for=\"node\" attr.name=\"start\" attr.type=\"boolean\"><default>false</default></key>\n");
+		out("  <key id=\"input\" for=\"edge\" attr.name=\"input\" attr.type=\"string\"/>\n");
+		out("  <key id=\"output\" for=\"edge\" attr.name=\"output\" attr.type=\"string\"/>\n");
+		out("  <key id=\"label\" for=\"edge\" attr.name=\"label\" attr.type=\"string\"/>\n");
+		out("  <graph id=\"G\" edgedefault=\"directed\">\n");
+		for(int s = 0; s < m.stateCount(); s++){
+			out("    <node id=\"n");
+			out(s);
+			out("\"><data key=\"name\">");
+			xmlEscaped(m.stateName(s));
+			out("</data>");
+			if(m.startState() != null && s == m.startIndex())
+				out("<data key=\"start\">true</data>");
+			out("</node>\n");
+		}
+		long edge = 0;
+		for(int s = 0; s < m.stateCount(); s++){
+			for(int i = 0; i < m.outDegree(s); i++){
+				Transition t = m.transition(s, i);
+				out("    <edge id=\"e");
+				out(edge++);
+				out("\" source=\"n");
+				out(s);
+				out("\" target=\"n");
+				out(m.target(s, i));
+				out("\">");
+				if(t.input() != null){
+					out("<data key=\"input\">");
+					xmlEscaped(t.input());
+					out("</data>");
+					if(t.output() != null){
+						out("<data key=\"output\">");
+						xmlEscaped(t.output());
+						out("</data>");
+					}
+				}else{
+					out("<data key=\"label\">");
+					xmlEscaped(t.label());
+					out("</data>");
+				}
+				out("</edge>\n");
+			}
+		}
+		out("  </graph>\n</graphml>\n");
+	}
+
+	private void json(Model m) throws IOException{
+		out("{\n  \"start\": ");
+		jsonString(m.startState());
+		out(",\n  \"states\": [");
+		for(int s = 0; s < m.stateCount(); s++){
+			if(s > 0)
+				out(", ");
+			jsonString(m.stateName(s));
+		}
+		out("],\n  \"transitions\": [");
+		boolean first = true;
+		for(int s = 0; s < m.stateCount(); s++){
+			for(int i = 0; i < m.outDegree(s); i++){
+				Transition t = m.transition(s, i);
+				out(first ? "\n    {\"from\": " : ",\n    {\"from\": ");
+				first = false;
+				jsonString(m.stateName(s));
+				out(", \"to\": ");
+				jsonString(m.stateName(m.target(s, i)));
+				if(t.input() != null){
+					out(", \"input\": ");
+					jsonString(t.input());
+					out(", \"output\": ");
+					jsonString(t.output());
+				}else{
+					out(", \"label\": ");
+					jsonString(t.label());
+				}
+				out('}');
+			}
+		}
+		out(first ? "]\n}\n" : "\n  ]\n}\n");
+	}
+
+	/*--------------------|
+	|      ESCAPING       |
+	|--------------------*/
+
+	/**
+	 * Writes a DOT id, plain identifiers are written as is, everything else (including the DOT keywords) is quoted.
+	 */
+	private void dotId(String id) throws IOException{
+		boolean plain = id.length() > 0 && !Character.isDigit(id.charAt(0)) && !isDotKeyword(id);
+		for(int i = 0; i < id.length() && plain; i++){
+			char c = id.charAt(i);
+			plain = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+		}
+		if(plain){
+			out(id);
+		}else{
+			out('"');
+			dotEscaped(id);
+			out('"');
+		}
+	}
+
+	private static boolean isDotKeyword(String id){
+		for(String k : DOT_KEYWORDS)
+			if(k.equalsIgnoreCase(id))
+				return true;
+		return false;
+	}
+
+	/**
+	 * This function writes the contents of a DOT string, '"' and '\' are escaped so DotParser reads the same text back. Null is written as "".
+	 */
+	private void dotEscaped(String s) throws IOException{
+		if(s == null)
+			return;
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\')
+				out('\\');
+			out(c);
+		}
+	}
+
+	/**
+	 * This function writes the contents of an AUT label, '"' and '\' are escaped. Null is written as "".
+	 */
+	private void autEscaped(String s) throws IOException{
+		if(s == null)
+			return;
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\')
+				out('\\');
+			out(c);
+		}
+	}
+
+	/**
+	 * This function writes XML text with '&', '<', '>' and '"' escaped. Null is written as "".
+	 */
+	private void xmlEscaped(String s) throws IOException{
+		if(s == null)
+			return;
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			switch(c){
+			case '&': out("&amp;"); break;
+			case '<': out("&lt;"); break;
+			case '>': out("&gt;"); break;
+			case '"': out("&quot;"); break;
+			default: out(c);
+			}
+		}
+	}
+
+	private void jsonString(String s) throws IOException{
+		if(s == null){
+			out("null");
+			return;
+		}
+		out('"');
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			switch(c){
+			case '"': out("\\\""); break;
+			case '\\': out("\\\\"); break;
+			case '\n': out("\\n"); break;
+			case '\r': out("\\r"); break;
+			case '\t': out("\\t"); break;
+			default:
+				if(c < 0x20){
+					out("\\u00");
+					out(Character.forDigit(c >> 4, 16));
+					out(Character.forDigit(c & 15, 16));
+				}else{
+					out(c);
+				}
+			}
+		}
+		out('"');
+	}
+
+	/*--------------------|
+	|       OUTPUT        |
+	|--------------------*/
+
+	private void out(char c) throws IOException{
+		if(pos == buf.length)
+			flushBuffer();
+		buf[pos++] = c;
+	}
+
+	private void out(String s) throws IOException{
+		for(int i = 0, n = s.length(); i < n; ){
+			if(pos == buf.length)
+				flushBuffer();
+			int chunk = Math.min(n - i, buf.length - pos);
+			s.getChars(i, i + chunk, buf, pos);
+			pos += chunk;
+			i += chunk;
+		}
+	}
+
+	private void out(long number) throws IOException{
+		if(number < 0){
+			out('-');
+			number = -number;
+		}
+		if(number >= 10)
+			out(number / 10);
+		out((char) ('0' + number % 10));
+	}
+
+	private void flushBuffer() throws IOException{
+		if(writer != null){
+			writer.write(buf, 0, pos);
+		}else if(appendable != null){
+			appendable.append(CharBuffer.wrap(buf, 0, pos));
+		}else{
+			CharBuffer chars = CharBuffer.wrap(buf, 0, pos);
+			while(true){
+				CoderResult r = encoder.encode(chars, bytes, false);
+				drain();
+				if(r.isUnderflow())
+					break;
+				if(r.isError())
+					r.throwException();
+			}
+			//Keep a dangling high surrogate for the next round.
+			if(chars.hasRemaining()){
+				int left = chars.remaining();
+				chars.get(buf, 0, left);
+				pos = left;
+				return;
+			}
+		}
+		pos = 0;
+	}
+
+	private void flush() throws IOException{
+		flushBuffer();
+		if(channel != null){
+			CharBuffer rest = CharBuffer.wrap(buf, 0, pos);
+			encoder.encode(rest, bytes, true);
+			encoder.flush(bytes);
+			drain();
+			pos = 0;
+		}
+	}
+
+	private void drain() throws IOException{
+		bytes.flip();
+		while(bytes.hasRemaining())
+			channel.write(bytes);
+		bytes.clear();
+	}
+}
@@ -0,0 +1,469 @@
+package convertion.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads and writes a versioned binary snapshot of a Model.
+ * The snapshot is loaded by memory mapping the file, after which queries are answered directly from the mapped buffers,
+ * without creating Transition objects or reading the whole file.
+ *
+ * Layout (little endian, every section aligned to 8 bytes):
+ * header			magic, version, state count, symbol count, start state, transition count, hash capacity, symbol data size.
+ * symbolOffsets	long[symbols+1], start of every symbol in symbolData.
+ * symbolData		UTF-8 bytes of all symbols (state names, inputs and outputs).
+ * symbolHash		int[capacity], open addressing table of symbol id+1 (0 = empty), keyed on String.hashCode.
+ * symbolState		int[symbols], state index of every symbol or -1 if the symbol is not a state.
+ * stateSymbol		int[states], symbol id of every state's name.
+ * rows				long[states+1], start of every state's outgoing transitions.
+ * edgeInput		int[transitions], symbol id of the input (or of the whole label if it has no input / output form), or -1 for a null label.
+ * edgeOutput		int[transitions], symbol id of the output, LABEL_ONLY if the label has no input / output form, or NULL_OUTPUT
+ *					if the transition has an input and a null output (version 2 and up).
+ * edgeTarget		int[transitions], state index of the target.
+ * @author Gijs van der Meijde
+ */
+public class ModelSnapshot {
+	public static final int MAGIC = 0x4C444D47; /* "GMDL" */
+	public static final int VERSION = 2; /* Version 1 has no NULL_OUTPUT, and can still be read */
+	public static final int LABEL_ONLY = -1, NULL_OUTPUT = -2; /* Output ids of a transition without an input / output form, and with a null output */
+	private static final int HEADER_SIZE = 40;
+	private static final int SEGMENT = 1 << 30; /* Sections are mapped in segments, since a single mapping is limited to 2GB */
+
+	private final int states, symbols, start, capacity;
+	private final long transitions;
+	private final Section symbolOffsets, symbolData, symbolHash, symbolState, stateSymbol, rows, edgeInput, edgeOutput, edgeTarget;
+
+	/**
+	 * Callback for iterating over the transitions of a state.
+	 */
+	public interface TransitionVisitor {
+		/**
+		 * @param input, symbol id of the input, or -1 for a null label.
+		 * @param output, symbol id of the output, LABEL_ONLY if the label has no input / output form, or NULL_OUTPUT for a null output.
+		 * @param target, state index of the target.
+		 */
+		void visit(int input, int output, int target);
+	}
+
+	private ModelSnapshot(FileChannel channel) throws IOException{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		channel.read(header, 0);
+		header.flip();
+		if(header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+			throw new IOException("Not a model snapshot.");
+		int version = header.getInt();
+		if(version < 1 || version > VERSION)
+			throw new IOException(String.format("Unsupported snapshot version %d, expected at most %d.", version, VERSION));
+		this.states = header.getInt();
+		this.symbols = header.getInt();
+		this.start = header.getInt();
+		this.capacity = header.getInt();
+		this.transitions = header.getLong();
+		long dataSize = header.getLong();
+
+		long offset = HEADER_SIZE;
+		symbolOffsets = new Section(channel, offset, 8L * (symbols+1));
+		symbolData = new Section(channel, offset = symbolOffsets.end(), dataSize);
+		symbolHash = new Section(channel, offset = symbolData.end(), 4L * capacity);
+		symbolState = new Section(channel, offset = symbolHash.end(), 4L * symbols);
+		stateSymbol = new Section(channel, offset = symbolState.end(), 4L * states);
+		rows = new Section(channel, offset = stateSymbol.end(), 8L * (states+1));
+		edgeInput = new Section(channel, offset = rows.end(), 4L * transitions);
+		edgeOutput = new Section(channel, offset = edgeInput.end(), 4L * transitions);
+		edgeTarget = new Section(channel, offset = edgeOutput.end(), 4L * transitions);
+		if(edgeTarget.end() > channel.size())
+			throw new IOException("Truncated model snapshot.");
+	}
+
+	/**
+	 * This function opens a snapshot by memory mapping it, only the header is read.
+	 * @param file, the snapshot file.
+	 * @return the opened snapshot.
+	 * @throws IOException when the file could not be read or is not a (supported) snapshot.
+	 */
+	public static ModelSnapshot open(Path file) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			return new ModelSnapshot(channel); //Mappings stay valid after the channel is closed.
+		}
+	}
+
+	/**
+	 * This function writes a snapshot of the given model.
+	 * @param m, the model to write.
+	 * @param file, the file to write to (will be overwritten).
+	 * @throws IOException when the file could not be written.
+	 */
+	public static void write(Model m, Path file) throws IOException{
+		int states = m.stateCount();
+		long transitions = m.transitionCount();
+		SymbolTable table = new SymbolTable();
+		for(int s = 0; s < states; s++)
+			table.intern(m.stateName(s));
+		for(int s = 0; s < states; s++){
+			for(int i = 0; i < m.outDegree(s); i++){
+				Transition t = m.transition(s, i);
+				if(t.input() != null || t.label() != null)
+					table.intern(t.input() != null ? t.input() : t.label());
+				if(t.output() != null)
+					table.intern(t.output());
+			}
+		}
+		int symbols = table.size();
+		int capacity = Integer.highestOneBit(Math.max(symbols, 1)) * 4;
+		byte[][] encoded = new byte[symbols][];
+		long dataSize = 0;
+		int[] hash = new int[capacity];
+		for(int id = 0; id < symbols; id++){
+			encoded[id] = table.name(id).getBytes(StandardCharsets.UTF_8);
+			dataSize += encoded[id].length;
+			int slot = mix(table.name(id).hashCode()) & (capacity-1);
+			while(hash[slot] != 0)
+				slot = (slot+1) & (capacity-1);
+			hash[slot] = id+1;
+		}
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			Writer w = new Writer(channel);
+			w.putInt(MAGIC).putInt(VERSION).putInt(states).putInt(symbols)
+			 .putInt(m.startState() == null ? -1 : m.startIndex()).putInt(capacity).putLong(transitions).putLong(dataSize)
+			 .align();
+			long offset = 0;
+			for(int id = 0; id < symbols; id++){
+				w.putLong(offset);
+				offset += encoded[id].length;
+			}
+			w.putLong(offset).align();
+			for(int id = 0; id < symbols; id++)
+				w.put(encoded[id]);
+			w.align();
+			for(int slot = 0; slot < capacity; slot++)
+				w.putInt(hash[slot]);
+			w.align();
+			for(int id = 0; id < symbols; id++)
+				w.putInt(id < states ? id : -1); //States are interned first, so state s has symbol id s.
+			w.align();
+			for(int s = 0; s < states; s++)
+				w.putInt(s);
+			w.align();
+			long row = 0;
+			for(int s = 0; s < states; s++){
+				w.putLong(row);
+				row += m.outDegree(s);
+			}
+			w.putLong(row).align();
+			for(int s = 0; s < states; s++)
+				for(int i = 0; i < m.outDegree(s); i++){
+					Transition t = m.transition(s, i);
+					w.putInt(t.input() != null ? table.get(t.input()) : t.label() != null ? table.get(t.label()) : -1);
+				}
+			w.align();
+			for(int s = 0; s < states; s++){
+				for(int i = 0; i < m.outDegree(s); i++){
+					Transition t = m.transition(s, i);
+					w.putInt(t.output() != null ? table.get(t.output()) : t.input() != null ? NULL_OUTPUT : LABEL_ONLY);
+				}
+			}
+			w.align();
+			for(int s = 0; s < states; s++)
+				for(int i = 0; i < m.outDegree(s); i++)
+					w.putInt(m.target(s, i));
+			w.align().flush();
+		}
+	}
+
+	/*--------------------|
+	|       QUERIES       |
+	|--------------------*/
+
+	/**
+	 * @return the amount of states.
+	 */
+	public int stateCount(){
+		return states;
+	}
+
+	/**
+	 * @return the amount of transitions.
+	 */
+	public long transitionCount(){
+		return transitions;
+	}
+
+	/**
+	 * @return the name of the start state, or null if the model had no start state.
+	 */
+	public String startState(){
+		return start < 0 ? null : stateName(start);
+	}
+
+	/**
+	 * This function returns the symbol with the given id.
+	 * @param id, the symbol id.
+	 * @return the symbol, or null if the id is negative.
+	 */
+	public String symbol(int id){
+		if(id < 0)
+			return null;
+		long from = symbolOffsets.getLong(id), to = symbolOffsets.getLong(id+1L);
+		byte[] bytes = new byte[(int) (to - from)];
+		symbolData.get(from, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This function looks up the id of a symbol using the hash table in the snapshot.
+	 * @param name, the symbol.
+	 * @return the symbol id, or -1 if the snapshot doesn't contain the symbol.
+	 */
+	public int symbolId(String name){
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		for(int slot = mix(name.hashCode()) & (capacity-1); ; slot = (slot+1) & (capacity-1)){
+			int id = symbolHash.getInt(slot) - 1;
+			if(id < 0)
+				return -1;
+			if(symbolEquals(id, bytes))
+				return id;
+		}
+	}
+
+	/**
+	 * @param name, the name of a state.
+	 * @return the index of the state, or -1 if it doesn't exist.
+	 */
+	public int indexOf(String name){
+		int id = symbolId(name);
+		return id < 0 ? -1 : symbolState.getInt(id);
+	}
+
+	/**
+	 * @param state, the index of a state.
+	 * @return the name of the state.
+	 */
+	public String stateName(int state){
+		return symbol(stateSymbol.getInt(state));
+	}
+
+	/**
+	 * @param state, the index of a state.
+	 * @return the amount of transitions leaving the state.
+	 */
+	public int outDegree(int state){
+		return (int) (rows.getLong(state+1L) - rows.getLong(state));
+	}
+
+	/**
+	 * @return the input symbol id of the i'th transition leaving the state, or -1 for a null label.
+	 */
+	public int input(int state, int i){
+		return edgeInput.getInt(rows.getLong(state) + i);
+	}
+
+	/**
+	 * @return the output symbol id of the i'th transition leaving the state, LABEL_ONLY or NULL_OUTPUT.
+	 */
+	public int output(int state, int i){
+		return edgeOutput.getInt(rows.getLong(state) + i);
+	}
+
+	/**
+	 * @return the target state index of the i'th transition leaving the state.
+	 */
+	public int target(int state, int i){
+		return edgeTarget.getInt(rows.getLong(state) + i);
+	}
+
+	/**
+	 * This function visits all transitions starting from a given state.
+	 * @param state, the name of the state.
+	 * @param visitor, the callback receiving every transition.
+	 * @return false if the state doesn't exist, true otherwise.
+	 */
+	public boolean getTransitionsFrom(String state, TransitionVisitor visitor){
+		int s = indexOf(state);
+		if(s < 0)
+			return false;
+		for(long e = rows.getLong(s), end = rows.getLong(s+1L); e < end; e++)
+			visitor.visit(edgeInput.getInt(e), edgeOutput.getInt(e), edgeTarget.getInt(e));
+		return true;
+	}
+
+	/**
+	 * This function gets the resulting state after taking a given transition from a given state.
+	 * @param from, the state we take the transition from.
+	 * @param transition, the label of the transition to take ("input / output").
+	 * @return the resulting state, or null if the transition doesn't exist.
+	 */
+	public String getState(String from, String transition){
+		int s = indexOf(from);
+		if(s < 0)
+			return null;
+		int split = transition.indexOf('/');
+		int input = symbolId(split < 0 ? transition : transition.substring(0, split).trim());
+		int output = split < 0 ? LABEL_ONLY : symbolId(transition.substring(split+1).trim());
+		if(input < 0 || (split >= 0 && output < 0))
+			return null;
+		for(long e = rows.getLong(s), end = rows.getLong(s+1L); e < end; e++){
+			int o = edgeOutput.getInt(e);
+			if(edgeInput.getInt(e) == input && (o == output || (split < 0 && o == NULL_OUTPUT)))	//The label of a null output is just the input.
+				return stateName(edgeTarget.getInt(e));
+		}
+		return null;
+	}
+
+	/**
+	 * This function materialises the snapshot into the given model.
+	 * @param into, the model to add the states and transitions to.
+	 * @return the given model.
+	 */
+	public Model toModel(Model into){
+		into.ensureCapacity(into.stateCount() + states);
+		String[] names = new String[states];
+		for(int s = 0; s < states; s++)
+			into.add(names[s] = stateName(s));
+		String[] symbolNames = new String[symbols];
+		for(int s = 0; s < states; s++){
+			for(long e = rows.getLong(s), end = rows.getLong(s+1L); e < end; e++){
+				int input = edgeInput.getInt(e), output = edgeOutput.getInt(e);
+				String in = input < 0 ? null : symbolNames[input] != null ? symbolNames[input] : (symbolNames[input] = symbol(input));
+				if(output == NULL_OUTPUT){
+					into.add(new Transition(names[s], names[edgeTarget.getInt(e)], in, null));
+				}else if(output < 0){
+					into.add(new Transition(names[s], names[edgeTarget.getInt(e)], in));
+				}else{
+					String out = symbolNames[output] != null ? symbolNames[output] : (symbolNames[output] = symbol(output));
+					into.add(new Transition(names[s], names[edgeTarget.getInt(e)], in, out));
+				}
+			}
+		}
+		if(start >= 0)
+			into.setStartState(names[start]);
+		return into;
+	}
+
+	/*--------------------|
+	|  PRIVATE FUNCTIONS  |
+	|--------------------*/
+
+	private boolean symbolEquals(int id, byte[] bytes){
+		long from = symbolOffsets.getLong(id);
+		if(symbolOffsets.getLong(id+1L) - from != bytes.length)
+			return false;
+		for(int i = 0; i < bytes.length; i++)
+			if(symbolData.getByte(from+i) != bytes[i])
+				return false;
+		return true;
+	}
+
+	private static int mix(int h){
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * A memory mapped region of the snapshot file, split in segments of at most 1GB.
+	 */
+	private static class Section {
+		private final MappedByteBuffer[] segments;
+		private final long offset, size;
+
+		Section(FileChannel channel, long offset, long size) throws IOException{
+			this.offset = offset;
+			this.size = size;
+			this.segments = new MappedByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+			for(int i = 0; i < segments.length; i++){
+				long from = (long) i * SEGMENT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + from, Math.min(SEGMENT, size - from));
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		long end(){
+			return (offset + size + 7) & ~7L;
+		}
+
+		byte getByte(long pos){
+			return segments[(int) (pos / SEGMENT)].get((int) (pos % SEGMENT));
+		}
+
+		int getInt(long index){
+			long pos = index * 4;
+			return segments[(int) (pos / SEGMENT)].getInt((int) (pos % SEGMENT));
+		}
+
+		long getLong(long index){
+			long pos = index * 8;
+			return segments[(int) (pos / SEGMENT)].getLong((int) (pos % SEGMENT));
+		}
+
+		void get(long pos, byte[] dst){
+			for(int i = 0; i < dst.length; ){
+				MappedByteBuffer segment = segments[(int) ((pos+i) / SEGMENT)];
+				int at = (int) ((pos+i) % SEGMENT), n = Math.min(dst.length - i, SEGMENT - at);
+				for(int j = 0; j < n; j++)
+					dst[i+j] = segment.get(at+j);
+				i += n;
+			}
+		}
+	}
+
+	/**
+	 * A bounded write buffer on top of a FileChannel.
+	 */
+	private static class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		private long written = 0;
+
+		Writer(FileChannel channel){
+			this.channel = channel;
+		}
+
+		Writer putInt(int v) throws IOException{
+			ensure(4);
+			buffer.putInt(v);
+			return this;
+		}
+
+		Writer putLong(long v) throws IOException{
+			ensure(8);
+			buffer.putLong(v);
+			return this;
+		}
+
+		Writer put(byte[] bytes) throws IOException{
+			for(int i = 0; i < bytes.length; ){
+				ensure(1);
+				int n = Math.min(bytes.length - i, buffer.remaining());
+				buffer.put(bytes, i, n);
+				i += n;
+			}
+			return this;
+		}
+
+		Writer align() throws IOException{
+			while(((written + buffer.position()) & 7) != 0){
+				ensure(1);
+				buffer.put((byte) 0);
+			}
+			return this;
+		}
+
+		void flush() throws IOException{
+			buffer.flip();
+			while(buffer.hasRemaining())
+				written += channel.write(buffer);
+			buffer.clear();
+		}
+
+		private void ensure(int bytes) throws IOException{
+			if(buffer.remaining() < bytes)
+				flush();
+		}
+	}
+}
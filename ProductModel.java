@@ -0,0 +1,232 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class is a lazy view of the synchronous product (parallel composition) of two or more Models.
+ * The inputs of the product are the union of the functions of all components, an input is taken by every component that has it
+ * in its functions at the same time, and is blocked if one of them has no transition for it. The other components stay in their state.
+ * The output of a product transition are the outputs of the taking components, in component order and separated by commas.
+ * A product state is a tuple of component states packed in a long, every component gets just enough bits for its states,
+ * so the product of all components can take at most 63 bits. States are only generated when they are explored,
+ * and explored states are tracked in a LongHashSet, so exploring takes about 16 bytes per reachable product state.
+ * The components are compiled first, so for every state and input only the first transition is used.
+ * @author Gijs van der Meijde
+ */
+public class ProductModel {
+	public static final long NONE = -1L;	/* Packed value of a missing state */
+
+	/**
+	 * Visitor of the states of the product during exploration.
+	 */
+	public interface Visitor {
+		/**
+		 * @param state, the packed product state.
+		 * @param depth, the length of a shortest input word that reaches the state.
+		 * @return false to stop the exploration.
+		 */
+		boolean visit(long state, int depth);
+	}
+
+	private final CompiledModel[] components;
+	private final int[] shift;
+	private final long[] mask;
+	private final List<String> inputs = new ArrayList<String>();
+	private final int[][] participants, local;	/* participants[x] = components that take input x, local[x][j] = input id of x in participants[x][j] */
+
+	/**
+	 * Constructor.
+	 * @param models, the components of the product.
+	 */
+	public ProductModel(Model... models){
+		if(models.length < 2)
+			throw new IllegalArgumentException("A product needs at least 2 components!");
+		this.components = new CompiledModel[models.length];
+		this.shift = new int[models.length];
+		this.mask = new long[models.length];
+		int bits = 0;
+		TreeSet<String> alphabet = new TreeSet<String>();
+		for(int i = 0; i < models.length; i++){
+			if(models[i].startState() == null)
+				throw new IllegalArgumentException("Start state not set!");
+			components[i] = models[i].compile();
+			int width = Math.max(1, 32 - Integer.numberOfLeadingZeros(components[i].stateCount() - 1));
+			shift[i] = bits;
+			mask[i] = (1L << width) - 1;
+			bits += width;
+			for(int x = 0; x < components[i].inputCount(); x++)
+				alphabet.add(components[i].inputs().name(x));
+		}
+		if(bits > 63)
+			throw new IllegalArgumentException(String.format("Product of %d components needs %d bits per state, at most 63 are supported.", models.length, bits));
+		inputs.addAll(alphabet);
+		this.participants = new int[inputs.size()][];
+		this.local = new int[inputs.size()][];
+		int[] taking = new int[models.length], ids = new int[models.length];
+		for(int x = 0; x < inputs.size(); x++){
+			int count = 0;
+			for(int i = 0; i < components.length; i++){
+				int id = components[i].inputs().get(inputs.get(x));
+				if(id >= 0){
+					taking[count] = i;
+					ids[count++] = id;
+				}
+			}
+			participants[x] = Arrays.copyOf(taking, count);
+			local[x] = Arrays.copyOf(ids, count);
+		}
+	}
+
+	/**
+	 * @return the packed start state, the tuple of the start states of the components.
+	 */
+	public long startState(){
+		long state = 0;
+		for(int i = 0; i < components.length; i++)
+			state |= (long) components[i].startState() << shift[i];
+		return state;
+	}
+
+	/**
+	 * This function takes a single step in the product.
+	 * @param state, a packed product state.
+	 * @param input, the index of the input in inputs().
+	 * @return the packed next state, or NONE if a component that takes the input has no transition for it.
+	 */
+	public long step(long state, int input){
+		int[] taking = participants[input], ids = local[input];
+		for(int j = 0; j < taking.length; j++){
+			int i = taking[j];
+			int t = components[i].step((int) ((state >>> shift[i]) & mask[i]), ids[j]);
+			if(t < 0)
+				return NONE;
+			state = (state & ~(mask[i] << shift[i])) | ((long) t << shift[i]);
+		}
+		return state;
+	}
+
+	/**
+	 * This function returns the output of a single step in the product.
+	 * @param state, a packed product state.
+	 * @param input, the index of the input in inputs().
+	 * @return the outputs of the components that take the input separated by commas, or null if the step is blocked.
+	 */
+	public String output(long state, int input){
+		int[] taking = participants[input], ids = local[input];
+		StringBuilder sb = new StringBuilder();
+		for(int j = 0; j < taking.length; j++){
+			int i = taking[j], s = (int) ((state >>> shift[i]) & mask[i]);
+			int o = components[i].output(s, ids[j]);
+			if(o < 0)
+				return null;
+			sb.append(j == 0 ? "" : ",").append(components[i].outputs().name(o));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param state, a packed product state.
+	 * @param component, the index of a component.
+	 * @return the index of the state of the component in its compiled model.
+	 */
+	public int componentState(long state, int component){
+		return (int) ((state >>> shift[component]) & mask[component]);
+	}
+
+	/**
+	 * @param state, a packed product state.
+	 * @return the name of the state, the names of the component states between parentheses.
+	 */
+	public String stateName(long state){
+		StringBuilder sb = new StringBuilder("(");
+		for(int i = 0; i < components.length; i++)
+			sb.append(i == 0 ? "" : ",").append(components[i].stateName(componentState(state, i)));
+		return sb.append(')').toString();
+	}
+
+	/**
+	 * @return the inputs of the product, in name order.
+	 */
+	public List<String> inputs(){
+		return inputs;
+	}
+
+	/**
+	 * @return the amount of components.
+	 */
+	public int componentCount(){
+		return components.length;
+	}
+
+	/**
+	 * This function explores the reachable states of the product breadth first, generating them on demand.
+	 * @param visitor, called once for every reachable state, or null.
+	 * @return the amount of visited states.
+	 */
+	public long explore(Visitor visitor){
+		LongHashSet visited = new LongHashSet();
+		long[] queue = new long[64];	/* Ring buffer of the frontier, with the depth of every state */
+		int[] depths = new int[64];
+		int head = 0, size = 0;
+		long count = 0;
+		long start = startState();
+		visited.add(start);
+		queue[0] = start;
+		size = 1;
+		while(size > 0){
+			long state = queue[head];
+			int depth = depths[head];
+			head = (head + 1) & (queue.length - 1);
+			size--;
+			count++;
+			if(visitor != null && !visitor.visit(state, depth))
+				break;
+			for(int x = 0; x < inputs.size(); x++){
+				long next = step(state, x);
+				if(next == NONE || !visited.add(next))
+					continue;
+				if(size == queue.length){
+					long[] grownQueue = new long[queue.length * 2];
+					int[] grownDepths = new int[queue.length * 2];
+					for(int i = 0; i < size; i++){
+						grownQueue[i] = queue[(head + i) & (queue.length - 1)];
+						grownDepths[i] = depths[(head + i) & (queue.length - 1)];
+					}
+					queue = grownQueue;
+					depths = grownDepths;
+					head = 0;
+				}
+				int tail = (head + size++) & (queue.length - 1);
+				queue[tail] = next;
+				depths[tail] = depth + 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * This function builds the reachable part of the product as an explicit Model, only meant for small products.
+	 * @param maxStates, the maximum amount of states of the result.
+	 * @return the model, with the tuple of start states as start state.
+	 */
+	public Model materialize(int maxStates){
+		Model m = new Model();
+		explore((state, depth) -> {
+			String from = stateName(state);
+			m.add(from);
+			for(int x = 0; x < inputs.size(); x++){
+				long next = step(state, x);
+				if(next != NONE)
+					m.add(new Transition(from, stateName(next), inputs.get(x), output(state, x)));
+			}
+			if(m.stateCount() > maxStates)
+				throw new IllegalStateException(String.format("Product has more than %d reachable states.", maxStates));
+			return true;
+		});
+		m.setStartState(stateName(startState()));
+		return m;
+	}
+}
@@ -0,0 +1,187 @@
+package convertion.model;
+
+import java.util.Arrays;
+
+/**
+ * This class is the transitive closure of a Model as a bit matrix, so whether a state is reachable from another is a single bit test.
+ * The closure is computed over the strongly connected components: components are numbered in reverse topological order,
+ * so the row of every component is its own bit or'ed with the rows of its successors, which are all computed before it.
+ * Rows are or'ed 64 components per word. States in the same component share a row, so the matrix takes c*c/8 bytes for c components.
+ *
+ * The model keeps the index up to date while it grows: a new state is a new component, and a new transition (from, to)
+ * adds the row of to's component to every row that reaches from's component (components that become strongly connected
+ * keep separate rows, which then stay equal). Removed transitions cause a rebuild on the next query. The counters show what this cost.
+ * @author Gijs van der Meijde
+ */
+public class ReachabilityIndex {
+	private final Model model;
+	private int n, components;
+	private int[] componentOf;	/* Row of every state, grows geometrically while states are added */
+	private int capacity, stride;	/* capacity = allocated rows and columns, stride = capacity/64 words per row */
+	private long[] matrix;	/* Bit d of row c (word matrix[c*stride + d/64]) is set if component d is reachable from component c */
+	private int modCount;	/* Modification count of the model this index belongs to */
+
+	private long fullBuilds = 0, insertions = 0, rowsUpdated = 0;
+
+	/**
+	 * Constructor that computes the closure of the given model.
+	 * @param m, the model.
+	 */
+	public ReachabilityIndex(Model m){
+		this.model = m;
+		this.rebuild();
+	}
+
+	/**
+	 * This function computes the closure from scratch.
+	 */
+	void rebuild(){
+		StronglyConnectedComponents scc = model.components();
+		this.n = model.stateCount();
+		this.components = scc.componentCount();
+		this.componentOf = new int[Math.max(n, 16)];
+		for(int s = 0; s < n; s++)
+			componentOf[s] = scc.componentOf(s);
+		allocate(Math.max(64, (components + 63) & ~63));
+		int[] dagStart = scc.dagStart(), dag = scc.dag();
+		for(int c = 0; c < components; c++){
+			int row = c*stride;
+			matrix[row + (c >>> 6)] |= 1L << c;
+			for(int i = dagStart[c]; i < dagStart[c+1]; i++){
+				int other = dag[i]*stride;
+				for(int w = 0; w <= (c >>> 6); w++)	//Successors have lower numbers, so they only reach lower numbers
+					matrix[row + w] |= matrix[other + w];
+			}
+		}
+		this.modCount = model.modCount();
+		this.fullBuilds++;
+	}
+
+	/**
+	 * This function allocates an empty matrix.
+	 * @param capacity, the amount of rows and columns, a multiple of 64.
+	 */
+	private void allocate(int capacity){
+		if((long) capacity * (capacity >>> 6) > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException(String.format("Cannot store the closure of %d components.", capacity));
+		this.capacity = capacity;
+		this.stride = capacity >>> 6;
+		this.matrix = new long[capacity * stride];
+	}
+
+	/**
+	 * This function checks if a state can be reached from another state, every state can reach itself.
+	 * @param from, the index of the state to start.
+	 * @param to, the index of the state to reach.
+	 * @return true if there is a route.
+	 */
+	public boolean reachable(int from, int to){
+		int c = componentOf[to];
+		return (matrix[componentOf[from]*stride + (c >>> 6)] & (1L << c)) != 0;
+	}
+
+	/**
+	 * @param from, the name of the state to start.
+	 * @param to, the name of the state to reach.
+	 * @return true if there is a route.
+	 */
+	public boolean reachable(String from, String to){
+		int f = model.indexOf(from), t = model.indexOf(to);
+		if(f < 0 || t < 0)
+			throw new IllegalArgumentException(String.format("State %s does not exist!", f < 0 ? from : to));
+		return reachable(f, t);
+	}
+
+	/**
+	 * @return true if the model changed in a way this index did not follow.
+	 */
+	public boolean isStale(){
+		return modCount != model.modCount();
+	}
+
+	/**
+	 * @return the amount of times the closure was computed from scratch.
+	 */
+	public long fullBuilds(){
+		return fullBuilds;
+	}
+
+	/**
+	 * @return the amount of transitions that were added incrementally.
+	 */
+	public long insertions(){
+		return insertions;
+	}
+
+	/**
+	 * @return the amount of rows that were changed by incrementally added transitions.
+	 */
+	public long rowsUpdated(){
+		return rowsUpdated;
+	}
+
+	/*--------------------|
+	|  Incremental update |
+	|--------------------*/
+
+	/**
+	 * This function adds the state that was just added to the model, as a new component that only reaches itself.
+	 * @param modCount, the modification count of the model after adding the state.
+	 */
+	void stateAdded(int modCount){
+		if(!sync(modCount))
+			return;
+		if(components == capacity){
+			long[] old = matrix;
+			int oldStride = stride;
+			allocate(capacity*2);
+			for(int c = 0; c < components; c++)
+				System.arraycopy(old, c*oldStride, matrix, c*stride, oldStride);
+		}
+		if(n == componentOf.length)
+			componentOf = Arrays.copyOf(componentOf, n*2);
+		componentOf[n++] = components;
+		matrix[components*stride + (components >>> 6)] |= 1L << components;
+		components++;
+	}
+
+	/**
+	 * This function adds the transition that was just added to the model.
+	 * @param from, the index of the origin state.
+	 * @param i, the position of the transition in from's outgoing transitions.
+	 * @param modCount, the modification count of the model after adding the transition.
+	 */
+	void transitionAdded(int from, int i, int modCount){
+		if(!sync(modCount))
+			return;
+		insertions++;
+		int u = componentOf[from], v = componentOf[model.target(from, i)];
+		if((matrix[u*stride + (v >>> 6)] & (1L << v)) != 0)
+			return;
+		//Row v itself doesn't change (if v reaches u, it is or'ed with itself), so it can be read while updating.
+		int uWord = u >>> 6;
+		long uBit = 1L << u;
+		for(int x = 0; x < components; x++){
+			int row = x*stride;
+			if((matrix[row + uWord] & uBit) == 0)
+				continue;
+			for(int w = 0; w < stride; w++)
+				matrix[row + w] |= matrix[v*stride + w];
+			rowsUpdated++;
+		}
+	}
+
+	/**
+	 * This function checks that the index was up to date before the change with the given modification count.
+	 * If it was not, the closure is computed again (which already includes the change).
+	 * @return true if the change still needs to be applied.
+	 */
+	private boolean sync(int modCount){
+		if(this.modCount == modCount - 1){
+			this.modCount = modCount;
+			return true;
+		}
+		rebuild();
+		return false;
+	}
+}
@@ -0,0 +1,61 @@
+package convertion.model;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * This class is a semiring over doubles, the pair of operations that a matrix multiplication uses instead of + and *.
+ * Cell (i,j) of a product is the sum (add) over k of the products (multiply) of cell (i,k) and cell (k,j).
+ * zero must be the identity of add and absorbing for multiply, one the identity of multiply.
+ * The constants of this class have a specialised loop in the multiplication, other semirings call the operators per cell.
+ * @author Gijs van der Meijde
+ */
+public class Semiring {
+	/** Ordinary multiplication. */
+	public static final Semiring PLUS_TIMES = new Semiring("(+,*)", 0, 1, (a, b) -> a + b, (a, b) -> a * b);
+	/** Shortest paths: the product of two distance matrices has the shortest routes through one intermediate state. */
+	public static final Semiring MIN_PLUS = new Semiring("(min,+)", Double.POSITIVE_INFINITY, 0, Math::min, (a, b) -> a + b);
+	/** Longest paths. */
+	public static final Semiring MAX_PLUS = new Semiring("(max,+)", Double.NEGATIVE_INFINITY, 0, Math::max, (a, b) -> a + b);
+	/** Widest paths: the capacity of a route is its smallest weight. */
+	public static final Semiring MAX_MIN = new Semiring("(max,min)", Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Math::max, Math::min);
+
+	private final String name;
+	private final double zero, one;
+	private final DoubleBinaryOperator add, multiply;
+
+	/**
+	 * Constructor for a semiring.
+	 * @param name, the name of the semiring.
+	 * @param zero, the identity of add, that makes any product zero.
+	 * @param one, the identity of multiply.
+	 * @param add, the addition, should be associative and commutative.
+	 * @param multiply, the multiplication, should be associative and distribute over add.
+	 */
+	public Semiring(String name, double zero, double one, DoubleBinaryOperator add, DoubleBinaryOperator multiply){
+		this.name = name;
+		this.zero = zero;
+		this.one = one;
+		this.add = add;
+		this.multiply = multiply;
+	}
+
+	public double zero(){
+		return zero;
+	}
+
+	public double one(){
+		return one;
+	}
+
+	public double add(double a, double b){
+		return add.applyAsDouble(a, b);
+	}
+
+	public double multiply(double a, double b){
+		return multiply.applyAsDouble(a, b);
+	}
+
+	public String toString(){
+		return name;
+	}
+}
@@ -0,0 +1,425 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a splitting tree of a Model (Lee and Yannakakis), built with partition refinement over int arrays.
+ * Every node of the tree is a block of states, the leaves are the classes of equivalent states.
+ * Every inner node has an input word, and its children group its states by the outputs they give on that word,
+ * so the word of the lowest common ancestor of two states separates them.
+ * Words are stored as an input followed by the word of another node, so the tree takes memory linear in the amount of states.
+ * The model is compiled first, so for every state and input only the first transition is used.
+ * Undefined transitions are treated as giving a distinct output and going to a sink state.
+ * Queries are not thread safe, since distinguishing sequences are cached on first use.
+ * @author Gijs van der Meijde
+ */
+public class SplittingTree {
+	private final CompiledModel compiled;
+	private final int modCount;
+	private final int n, k, sink;
+	private final int[] next, out;	/* next[s*k+a], out[s*k+a] including the sink state n, undefined outputs are -1 */
+	private final int[] predStart, pred;	/* pred[predStart[t]..predStart[t+1]) = states with a transition to t */
+
+	private final int[] elements, location, leafOf;	/* elements is a permutation of the states in which every node is a range */
+	private final int[] parent, depth, firstChild, nextSibling, start, end;
+	private final int[] wordInput, wordNext, wordLength;	/* word(node) = wordInput followed by word(wordNext), if wordNext is not -1 */
+	private int nodes = 0;
+	private final int[] splitOrder;	/* Inner nodes in the order they were split, a word only refers to nodes split before it */
+	private int splits = 0;
+
+	private final int[] keyStamp, keyGroup, groupOf, scratch;
+	private int stamp = 0, groups = 0;
+	private int[] stack;
+	private int stackSize = 0;
+	private final boolean[] queued;
+
+	private final int[][] distinguishing;
+	private final boolean[] searched;
+
+	/**
+	 * Constructor that builds the splitting tree of the current state of the model.
+	 * @param m, the model.
+	 */
+	public SplittingTree(Model m){
+		this.compiled = m.compile();
+		this.modCount = m.modCount();
+		this.n = compiled.stateCount();
+		this.k = compiled.inputCount();
+		this.sink = n;
+		int size = n + 1;
+		this.next = new int[size * k];
+		this.out = new int[size * k];
+		for(int s = 0; s < size; s++){
+			for(int a = 0; a < k; a++){
+				int t = s == sink ? -1 : compiled.step(s, a);
+				next[s*k+a] = t < 0 ? sink : t;
+				out[s*k+a] = t < 0 ? -1 : compiled.output(s, a);
+			}
+		}
+		this.predStart = new int[size+1];
+		this.pred = new int[size * k];
+		for(int c = 0; c < next.length; c++)
+			predStart[next[c]+1]++;
+		for(int t = 0; t < size; t++)
+			predStart[t+1] += predStart[t];
+		int[] fill = Arrays.copyOf(predStart, size);
+		for(int c = 0; c < next.length; c++)
+			pred[fill[next[c]]++] = c / k;
+
+		int maxNodes = 2 * size;
+		this.elements = new int[size];
+		this.location = new int[size];
+		this.leafOf = new int[size];
+		this.parent = new int[maxNodes];
+		this.depth = new int[maxNodes];
+		this.firstChild = new int[maxNodes];
+		this.nextSibling = new int[maxNodes];
+		this.start = new int[maxNodes];
+		this.end = new int[maxNodes];
+		this.wordInput = new int[maxNodes];
+		this.wordNext = new int[maxNodes];
+		this.wordLength = new int[maxNodes];
+		this.queued = new boolean[maxNodes];
+		this.splitOrder = new int[size];
+		this.keyStamp = new int[Math.max(compiled.outputs().size() + 1, maxNodes)];
+		this.keyGroup = new int[keyStamp.length];
+		this.groupOf = new int[size];
+		this.scratch = new int[size];
+		this.stack = new int[16];
+		this.distinguishing = new int[n][];
+		this.searched = new boolean[n];
+
+		for(int s = 0; s < size; s++)
+			elements[s] = location[s] = s;
+		int root = node(-1, 0, size);
+		push(root);
+		while(stackSize > 0){
+			int b = stack[--stackSize];
+			queued[b] = false;
+			if(firstChild[b] == -1 && end[b] - start[b] > 1)
+				refine(b);
+		}
+	}
+
+	/*--------------------|
+	|       QUERIES       |
+	|--------------------*/
+
+	/**
+	 * @return the modification count of the model when the tree was built.
+	 */
+	int modCount(){
+		return modCount;
+	}
+
+	/**
+	 * @return the compiled model the tree was built for, input ids and state indices refer to it.
+	 */
+	public CompiledModel compiled(){
+		return compiled;
+	}
+
+	/**
+	 * This function checks if 2 states are equivalent (no input word separates them).
+	 * @param s, the index of a state.
+	 * @param t, the index of a state.
+	 * @return true if the states are equivalent.
+	 */
+	public boolean equivalent(int s, int t){
+		return leafOf[s] == leafOf[t];
+	}
+
+	/**
+	 * @return the amount of classes of equivalent states.
+	 */
+	public int classes(){
+		int leaves = 0;
+		for(int v = 0; v < nodes; v++)
+			if(firstChild[v] == -1)
+				leaves++;
+		int s = leafOf[sink];
+		return end[s] - start[s] == 1 ? leaves - 1 : leaves;
+	}
+
+	/**
+	 * This function returns an input word on which 2 states give different outputs (or on which one of them gets stuck).
+	 * @param s, the index of a state.
+	 * @param t, the index of a state.
+	 * @return the input ids of the word, or null if the states are equivalent.
+	 */
+	public int[] separatingSequence(int s, int t){
+		if(leafOf[s] == leafOf[t])
+			return null;
+		return word(lca(leafOf[s], leafOf[t]));
+	}
+
+	/**
+	 * This function returns the words of the ancestors of a state in the tree.
+	 * Together they separate the state from every state it is not equivalent to.
+	 * @param s, the index of a state.
+	 * @return the input words, ordered from the root down.
+	 */
+	public List<int[]> identifyingWords(int s){
+		List<int[]> words = new ArrayList<int[]>();
+		for(int v = parent[leafOf[s]]; v != -1; v = parent[v])
+			words.add(word(v));
+		Collections.reverse(words);
+		return words;
+	}
+
+	/**
+	 * This function returns the distinct words of all inner nodes of the tree (a characterizing set),
+	 * together they separate every pair of states that are not equivalent.
+	 * @return the input words, in the order the nodes were split.
+	 */
+	public List<int[]> characterizingSet(){
+		int[] canonical = new int[nodes];
+		Map<Long,Integer> ids = new HashMap<Long,Integer>();
+		List<int[]> words = new ArrayList<int[]>();
+		for(int i = 0; i < splits; i++){
+			int v = splitOrder[i];
+			long key = ((long) wordInput[v] << 32) | (wordNext[v] == -1 ? 0 : canonical[wordNext[v]] + 1);
+			Integer id = ids.get(key);
+			if(id == null){
+				ids.put(key, id = ids.size());
+				words.add(word(v));
+			}
+			canonical[v] = id;
+		}
+		return words;
+	}
+
+	/**
+	 * This function returns an input word whose outputs from the given state differ from the outputs from every other state (an UIO sequence).
+	 * It is found greedily: as long as other states give the same outputs, the word of the lowest node containing the current state
+	 * and the current states of all remaining candidates is appended, which removes at least one candidate.
+	 * The result is cached.
+	 * @param s, the index of a state.
+	 * @return the input ids of the word, or null if none was found (the word leads into an equivalent state, or needs an undefined transition of s).
+	 */
+	public int[] distinguishingSequence(int s){
+		if(!searched[s]){
+			distinguishing[s] = searchDistinguishingSequence(s);
+			searched[s] = true;
+		}
+		return distinguishing[s] == null ? null : distinguishing[s].clone();
+	}
+
+	private int[] searchDistinguishingSequence(int s){
+		int[] candidates = new int[n];
+		int count = 0;
+		for(int t = 0; t < n; t++)
+			if(t != s)
+				candidates[count++] = t;
+		int[] word = new int[16];
+		int length = 0, current = s;
+		int[] outputs = new int[16];
+		while(count > 0){
+			//Candidates in the same state behave the same from now on.
+			stamp++;
+			int unique = 0, lo = location[current], hi = location[current];
+			for(int c = 0; c < count; c++){
+				int t = candidates[c];
+				if(keyStamp[t] == stamp)
+					continue;
+				keyStamp[t] = stamp;
+				candidates[unique++] = t;
+				lo = Math.min(lo, location[t]);
+				hi = Math.max(hi, location[t]);
+			}
+			count = unique;
+			int l = lca(leafOf[elements[lo]], leafOf[elements[hi]]);
+			if(firstChild[l] == -1)
+				return null;
+			int[] w = word(l);
+			if(outputs.length < w.length)
+				outputs = new int[w.length];
+			int state = current;
+			for(int i = 0; i < w.length; i++){
+				outputs[i] = out[state*k+w[i]];
+				if(outputs[i] == -1)
+					return null;
+				state = next[state*k+w[i]];
+			}
+			current = state;
+			int kept = 0;
+			for(int c = 0; c < count; c++){
+				int t = candidates[c];
+				boolean same = true;
+				for(int i = 0; i < w.length && same; i++){
+					same = out[t*k+w[i]] == outputs[i];
+					t = next[t*k+w[i]];
+				}
+				if(same)
+					candidates[kept++] = t;
+			}
+			count = kept;
+			if(length + w.length > word.length)
+				word = Arrays.copyOf(word, Math.max(word.length*2, length + w.length));
+			System.arraycopy(w, 0, word, length, w.length);
+			length += w.length;
+		}
+		return Arrays.copyOf(word, length);
+	}
+
+	/**
+	 * @return the word of an inner node.
+	 */
+	private int[] word(int v){
+		int[] w = new int[wordLength[v]];
+		for(int i = 0; v != -1; v = wordNext[v])
+			w[i++] = wordInput[v];
+		return w;
+	}
+
+	private int lca(int x, int y){
+		while(depth[x] > depth[y])
+			x = parent[x];
+		while(depth[y] > depth[x])
+			y = parent[y];
+		while(x != y){
+			x = parent[x];
+			y = parent[y];
+		}
+		return x;
+	}
+
+	/*--------------------|
+	|     REFINEMENT      |
+	|--------------------*/
+
+	/**
+	 * This function splits a leaf if one of its inputs gives different outputs, or leads to states in different leaves.
+	 * Single inputs are tried first, otherwise the input whose successors have the lowest common ancestor with the shortest word is used.
+	 */
+	private void refine(int b){
+		int from = start[b], to = end[b];
+		for(int a = 0; a < k; a++){
+			int o = out[elements[from]*k+a];
+			for(int p = from+1; p < to; p++){
+				if(out[elements[p]*k+a] != o){
+					stamp++;
+					for(int q = from; q < to; q++)
+						groupOf[q-from] = key(out[elements[q]*k+a] + 1);
+					split(b, a, -1);
+					return;
+				}
+			}
+		}
+		int best = -1, bestNode = -1;
+		for(int a = 0; a < k; a++){
+			int lo = Integer.MAX_VALUE, hi = -1;
+			for(int p = from; p < to; p++){
+				int loc = location[next[elements[p]*k+a]];
+				lo = Math.min(lo, loc);
+				hi = Math.max(hi, loc);
+			}
+			int x = leafOf[elements[lo]], y = leafOf[elements[hi]];
+			if(x == y)
+				continue;
+			int l = lca(x, y);
+			if(best == -1 || wordLength[l] < wordLength[bestNode]){
+				best = a;
+				bestNode = l;
+			}
+		}
+		if(best == -1)
+			return;
+		int children = 0;
+		for(int c = firstChild[bestNode]; c != -1; c = nextSibling[c])
+			scratch[children++] = start[c];
+		stamp++;
+		for(int p = from; p < to; p++){
+			int child = Arrays.binarySearch(scratch, 0, children, location[next[elements[p]*k+best]]);
+			groupOf[p-from] = key(child < 0 ? -child-2 : child);
+		}
+		split(b, best, bestNode);
+	}
+
+	/**
+	 * @return the group of a key, groups are numbered in order of first appearance since the last stamp.
+	 */
+	private int key(int key){
+		if(keyStamp[key] != stamp){
+			keyStamp[key] = stamp;
+			keyGroup[key] = groups++;
+		}
+		return keyGroup[key];
+	}
+
+	/**
+	 * This function splits leaf b into the groups in groupOf, and gives b the word input followed by the word of node.
+	 * The leaves containing predecessors of the states that are not in the largest group are queued again.
+	 */
+	private void split(int b, int input, int node){
+		int from = start[b], to = end[b], groups = this.groups;
+		this.groups = 0;
+		int[] offsets = new int[groups+1];
+		for(int p = from; p < to; p++)
+			offsets[groupOf[p-from]+1]++;
+		int largest = 0;
+		for(int g = 0; g < groups; g++){
+			if(offsets[g+1] > offsets[largest+1])
+				largest = g;
+			offsets[g+1] += offsets[g];
+		}
+		int[] fill = Arrays.copyOf(offsets, groups);
+		for(int p = from; p < to; p++)
+			scratch[fill[groupOf[p-from]]++] = elements[p];
+		for(int p = from; p < to; p++){
+			elements[p] = scratch[p-from];
+			location[elements[p]] = p;
+		}
+		splitOrder[splits++] = b;
+		wordInput[b] = input;
+		wordNext[b] = node;
+		wordLength[b] = 1 + (node == -1 ? 0 : wordLength[node]);
+		int previous = -1;
+		for(int g = 0; g < groups; g++){
+			int child = node(b, from + offsets[g], from + offsets[g+1]);
+			if(previous == -1)
+				firstChild[b] = child;
+			else
+				nextSibling[previous] = child;
+			previous = child;
+			push(child);
+			for(int p = start[child]; p < end[child]; p++)
+				leafOf[elements[p]] = child;
+		}
+		for(int g = 0; g < groups; g++){
+			if(g == largest)
+				continue;
+			for(int p = from + offsets[g]; p < from + offsets[g+1]; p++){
+				int t = elements[p];
+				for(int i = predStart[t]; i < predStart[t+1]; i++)
+					push(leafOf[pred[i]]);
+			}
+		}
+	}
+
+	private int node(int parent, int from, int to){
+		int v = nodes++;
+		this.parent[v] = parent;
+		this.depth[v] = parent == -1 ? 0 : depth[parent] + 1;
+		this.firstChild[v] = -1;
+		this.nextSibling[v] = -1;
+		this.start[v] = from;
+		this.end[v] = to;
+		this.wordNext[v] = -1;
+		return v;
+	}
+
+	private void push(int v){
+		if(queued[v])
+			return;
+		queued[v] = true;
+		if(stackSize == stack.length)
+			stack = Arrays.copyOf(stack, stackSize*2);
+		stack[stackSize++] = v;
+	}
+}
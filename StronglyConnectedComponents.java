@@ -0,0 +1,222 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is the decomposition of a Model into strongly connected components, computed with Tarjan's algorithm.
+ * The depth first search keeps its own stack of states and transition positions instead of recursing,
+ * so it can not overflow the call stack on large models, and it takes O(n + m) time for n states and m transitions.
+ * Tarjan's algorithm finishes a component after all components it can reach, so components are numbered in reverse topological order:
+ * every transition goes to a component with the same or a lower number, and component 0 is a sink component.
+ * The condensation (the DAG of the components) is stored with every edge once.
+ * The decomposition is of the model as it was when it was built.
+ * @author Gijs van der Meijde
+ */
+public class StronglyConnectedComponents {
+	private final Model model;
+	private final int modCount;
+	private final int n;
+	private int count = 0;
+	private final int[] componentOf;
+	private final int[] memberStart, members;	/* members[memberStart[c]..memberStart[c+1]) = states of component c, in index order */
+	private final int[] dagStart, dag;	/* dag[dagStart[c]..dagStart[c+1]) = components with a transition from component c, without c itself */
+	private final boolean[] cyclic;	/* cyclic[c] = component c has a transition inside itself */
+
+	/**
+	 * Constructor that decomposes the current state of the model.
+	 * @param m, the model.
+	 */
+	public StronglyConnectedComponents(Model m){
+		this.model = m;
+		this.modCount = m.modCount();
+		this.n = m.stateCount();
+		this.componentOf = new int[n];
+		tarjan();
+
+		this.memberStart = new int[count+1];
+		for(int s = 0; s < n; s++)
+			memberStart[componentOf[s]+1]++;
+		for(int c = 0; c < count; c++)
+			memberStart[c+1] += memberStart[c];
+		this.members = new int[n];
+		int[] fill = Arrays.copyOf(memberStart, count);
+		for(int s = 0; s < n; s++)
+			members[fill[componentOf[s]]++] = s;
+
+		this.dagStart = new int[count+1];
+		this.cyclic = new boolean[count];
+		int[] stamp = new int[count], edges = new int[16];
+		Arrays.fill(stamp, -1);
+		int size = 0;
+		for(int c = 0; c < count; c++){
+			dagStart[c] = size;
+			for(int p = memberStart[c]; p < memberStart[c+1]; p++){
+				int s = members[p];
+				for(int i = 0; i < m.outDegree(s); i++){
+					int d = componentOf[m.target(s, i)];
+					if(d == c)
+						cyclic[c] = true;
+					else if(stamp[d] != c){
+						stamp[d] = c;
+						if(size == edges.length)
+							edges = Arrays.copyOf(edges, size*2);
+						edges[size++] = d;
+					}
+				}
+			}
+		}
+		dagStart[count] = size;
+		this.dag = Arrays.copyOf(edges, size);
+	}
+
+	/**
+	 * This function runs Tarjan's algorithm with an explicit stack of (state, next transition) frames.
+	 */
+	private void tarjan(){
+		int[] index = new int[n], low = new int[n];
+		int[] stack = new int[n], frameState = new int[n], frameEdge = new int[n];
+		boolean[] onStack = new boolean[n];
+		Arrays.fill(index, -1);
+		int counter = 0, top = 0;
+		for(int root = 0; root < n; root++){
+			if(index[root] >= 0)
+				continue;
+			int depth = 0;
+			frameState[0] = root;
+			frameEdge[0] = 0;
+			index[root] = low[root] = counter++;
+			stack[top++] = root;
+			onStack[root] = true;
+			while(depth >= 0){
+				int s = frameState[depth];
+				if(frameEdge[depth] < model.outDegree(s)){
+					int t = model.target(s, frameEdge[depth]++);
+					if(index[t] < 0){
+						index[t] = low[t] = counter++;
+						stack[top++] = t;
+						onStack[t] = true;
+						depth++;
+						frameState[depth] = t;
+						frameEdge[depth] = 0;
+					}else if(onStack[t])
+						low[s] = Math.min(low[s], index[t]);
+					continue;
+				}
+				//All transitions of s are done: s is the root of a component, or passes its low link to its parent.
+				if(low[s] == index[s]){
+					int t;
+					do{
+						t = stack[--top];
+						onStack[t] = false;
+						componentOf[t] = count;
+					}while(t != s);
+					count++;
+				}
+				depth--;
+				if(depth >= 0)
+					low[frameState[depth]] = Math.min(low[frameState[depth]], low[s]);
+			}
+		}
+	}
+
+	/**
+	 * @return the modCount of the model when the decomposition was built.
+	 */
+	int modCount(){
+		return modCount;
+	}
+
+	/**
+	 * @return the amount of components.
+	 */
+	public int componentCount(){
+		return count;
+	}
+
+	/**
+	 * @param state, the name of a state.
+	 * @return the number of the component of the state.
+	 */
+	public int component(String state){
+		int s = model.indexOf(state);
+		if(s < 0)
+			throw new IllegalArgumentException(String.format("State %s does not exist!", state));
+		return componentOf[s];
+	}
+
+	/**
+	 * @param component, the number of a component.
+	 * @return the names of the states of the component.
+	 */
+	public List<String> members(int component){
+		List<String> names = new ArrayList<String>(memberStart[component+1] - memberStart[component]);
+		for(int p = memberStart[component]; p < memberStart[component+1]; p++)
+			names.add(model.stateName(members[p]));
+		return names;
+	}
+
+	/**
+	 * @param component, the number of a component.
+	 * @return the components that the component has transitions to in the condensation, these all have a lower number.
+	 */
+	public int[] successors(int component){
+		return Arrays.copyOfRange(dag, dagStart[component], dagStart[component+1]);
+	}
+
+	/**
+	 * @param component, the number of a component.
+	 * @return true if no transition leaves the component.
+	 */
+	public boolean isSink(int component){
+		return dagStart[component] == dagStart[component+1];
+	}
+
+	/**
+	 * @param component, the number of a component.
+	 * @return true if the component is a single state without a transition to itself.
+	 */
+	public boolean isTrivial(int component){
+		return !cyclic[component];
+	}
+
+	/**
+	 * @return the condensation as a model with a state "C<number>" per component and a transition with an empty label per edge.
+	 */
+	public Model condensation(){
+		Model m = new Model();
+		for(int c = 0; c < count; c++)
+			m.add("C" + c);
+		for(int c = 0; c < count; c++)
+			for(int i = dagStart[c]; i < dagStart[c+1]; i++)
+				m.add(new Transition("C" + c, "C" + dag[i], ""));
+		if(model.startState() != null)
+			m.setStartState("C" + componentOf[model.startIndex()]);
+		return m;
+	}
+
+	/*--------------------|
+	|  Package access     |
+	|--------------------*/
+
+	int componentOf(int state){
+		return componentOf[state];
+	}
+
+	int[] dagStart(){
+		return dagStart;
+	}
+
+	int[] dag(){
+		return dag;
+	}
+
+	int[] memberStart(){
+		return memberStart;
+	}
+
+	int[] members(){
+		return members;
+	}
+}
@@ -0,0 +1,64 @@
+package convertion.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class interns symbols (inputs, outputs, state names) to dense integer ids and back.
+ * Ids are handed out in order of first occurrence, starting at 0.
+ * Lookups are lock free, new symbols are added under a lock so the table can be shared between threads.
+ * @author Gijs van der Meijde
+ */
+public class SymbolTable {
+	private final Map<String,Integer> ids = new ConcurrentHashMap<String,Integer>();
+	private volatile String[] names = new String[16];
+	private volatile int size = 0;
+	
+	/**
+	 * This function returns the id of the given symbol, adding it to the table if it doesn't exist already.
+	 * @param symbol, the symbol to intern.
+	 * @return the id of the symbol.
+	 */
+	public int intern(String symbol){
+		Integer id = ids.get(symbol);
+		if(id != null)
+			return id;
+		synchronized(this){
+			id = ids.get(symbol);
+			if(id != null)
+				return id;
+			if(size == names.length)
+				names = Arrays.copyOf(names, size*2);
+			names[size] = symbol;
+			ids.put(symbol, size);
+			return size++;
+		}
+	}
+	
+	/**
+	 * This function returns the id of the given symbol without adding it.
+	 * @param symbol, the symbol to look up.
+	 * @return the id of the symbol, or -1 if it is not in the table.
+	 */
+	public int get(String symbol){
+		Integer id = ids.get(symbol);
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * This function returns the symbol with the given id.
+	 * @param id, the id of the symbol.
+	 * @return the symbol, or null if the id is negative.
+	 */
+	public String name(int id){
+		return id < 0 ? null : names[id];
+	}
+	
+	/**
+	 * @return the amount of symbols in the table.
+	 */
+	public int size(){
+		return size;
+	}
+}
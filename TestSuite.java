@@ -0,0 +1,372 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class generates conformance test suites for a Model with the W-method, the Wp-method and the randomized Wp-method.
+ * Access sequences are found with a breadth first search from the start state, the characterizing set and the state identifiers
+ * are taken from the splitting tree of the model. With k extra states the suites are:
+ * W		access(s) . middle . w, for every middle of at most k+1 inputs and every w in the characterizing set.
+ * Wp		access(s) . middle . w, for every middle of at most k inputs and every w in the characterizing set,
+ * 			and for every middle of exactly k+1 inputs and every w in the identifier of the reached state.
+ * Middles only follow defined transitions.
+ *
+ * Suites are streamed per state: every word belongs to the state whose access sequence is its longest prefix that is an access sequence,
+ * the words of a state are collected in a trie, which removes duplicates, and then emitted in trie order, so words with a shared prefix
+ * follow each other. With minimiseResets only the leaves of the trie are emitted, since a word that is a prefix of another word is tested by it.
+ * States are generated in parallel when the stream is parallel, only the tries of the states being generated are in memory.
+ * @author Gijs van der Meijde
+ */
+public class TestSuite {
+	public enum Method { W, WP }
+
+	private final CompiledModel compiled;
+	private final SplittingTree tree;
+	private final int[] parent, parentInput, order;	/* Access tree, order holds the reachable states in breadth first order */
+	private final int k;
+	private final int[][] characterizingSet;
+	private final AtomicReferenceArray<int[][]> identifiers;
+	private int extraStates = 0;
+	private boolean minimiseResets = false;
+
+	/**
+	 * Constructor.
+	 * @param m, the model to test against, it needs a start state.
+	 */
+	public TestSuite(Model m){
+		if(m.startState() == null)
+			throw new IllegalArgumentException("Start state not set!");
+		this.tree = m.splittingTree();
+		this.compiled = tree.compiled();
+		this.k = compiled.inputCount();
+		this.characterizingSet = tree.characterizingSet().toArray(new int[0][]);
+		int n = compiled.stateCount();
+		this.identifiers = new AtomicReferenceArray<int[][]>(n);
+		this.parent = new int[n];
+		this.parentInput = new int[n];
+		int[] queue = new int[n];
+		Arrays.fill(parent, -2);
+		int head = 0, tail = 0;
+		parent[compiled.startState()] = -1;
+		queue[tail++] = compiled.startState();
+		while(head < tail){
+			int s = queue[head++];
+			for(int a = 0; a < k; a++){
+				int t = compiled.step(s, a);
+				if(t >= 0 && parent[t] == -2){
+					parent[t] = s;
+					parentInput[t] = a;
+					queue[tail++] = t;
+				}
+			}
+		}
+		this.order = Arrays.copyOf(queue, tail);
+	}
+
+	/**
+	 * This function sets the amount of extra states the implementation may have compared to the model.
+	 * @param k, the amount of extra states (>= 0).
+	 * @return the current test suite.
+	 */
+	public TestSuite setExtraStates(int k){
+		if(k < 0)
+			throw new IllegalArgumentException("The amount of extra states can't be negative.");
+		this.extraStates = k;
+		return this;
+	}
+
+	/**
+	 * This function sets weather words that are a prefix of another word of the same state should be left out.
+	 * @param minimiseResets, true to only emit the longest words.
+	 * @return the current test suite.
+	 */
+	public TestSuite setMinimiseResets(boolean minimiseResets){
+		this.minimiseResets = minimiseResets;
+		return this;
+	}
+
+	/**
+	 * @return the compiled model, input ids in encoded words refer to it.
+	 */
+	public CompiledModel compiled(){
+		return compiled;
+	}
+
+	/**
+	 * This function returns the access sequence of a state.
+	 * @param state, the index of the state.
+	 * @return the input ids of a shortest word from the start state to the state, or null if the state can't be reached.
+	 */
+	public int[] accessSequence(int state){
+		if(parent[state] == -2)
+			return null;
+		int length = 0;
+		for(int s = state; parent[s] != -1; s = parent[s])
+			length++;
+		int[] word = new int[length];
+		for(int s = state; parent[s] != -1; s = parent[s])
+			word[--length] = parentInput[s];
+		return word;
+	}
+
+	/**
+	 * @return the characterizing set used by the suites.
+	 */
+	public List<int[]> characterizingSet(){
+		return new ArrayList<int[]>(Arrays.asList(characterizingSet));
+	}
+
+	/**
+	 * This function streams a test suite as input names.
+	 * @param method, the method.
+	 * @param parallel, weather the states should be generated in parallel.
+	 * @return the words of the suite.
+	 */
+	public Stream<List<String>> stream(Method method, boolean parallel){
+		return encoded(method, parallel).map(this::decode);
+	}
+
+	/**
+	 * This function streams a test suite as input ids, ordered by the access sequences of the states (unless parallel).
+	 * @param method, the method.
+	 * @param parallel, weather the states should be generated in parallel.
+	 * @return the words of the suite.
+	 */
+	public Stream<int[]> encoded(Method method, boolean parallel){
+		IntStream states = Arrays.stream(order);
+		if(parallel)
+			states = states.parallel();
+		return states.boxed().flatMap(s -> {
+			int[] access = accessSequence(s);
+			Trie trie = generate(s, access, method);
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(trie.words(access, minimiseResets), Spliterator.ORDERED | Spliterator.NONNULL), false);
+		});
+	}
+
+	/**
+	 * This function streams an endless randomized Wp test suite, limit it to the amount of words to test.
+	 * Every word is the access sequence of a random reachable state, a random middle of at least minimalSize inputs
+	 * (plus a geometrically distributed amount with mean rndLength) over defined transitions, and a random word of the
+	 * identifier of the reached state. The same seed gives the same words, as long as the stream is consumed sequentially.
+	 * @param seed, the seed of the random generator.
+	 * @param minimalSize, the minimal length of the middle.
+	 * @param rndLength, the mean of the random part of the length of the middle.
+	 * @return the words of the suite, as input names.
+	 */
+	public Stream<List<String>> randomWp(long seed, int minimalSize, int rndLength){
+		Random random = new Random(seed);
+		return Stream.generate(() -> {
+			int[] defined = new int[k];
+			int s = order[random.nextInt(order.length)];
+			int[] access = accessSequence(s);
+			int[] word = Arrays.copyOf(access, access.length + minimalSize + 16);
+			int length = access.length;
+			for(int i = 0; i < minimalSize || random.nextInt(rndLength + 1) != 0; i++){
+				int options = 0;
+				for(int a = 0; a < k; a++)
+					if(compiled.step(s, a) >= 0)
+						defined[options++] = a;
+				if(options == 0)
+					break;
+				int a = defined[random.nextInt(options)];
+				if(length == word.length)
+					word = Arrays.copyOf(word, length*2);
+				word[length++] = a;
+				s = compiled.step(s, a);
+			}
+			int[][] identifier = identifier(s);
+			int[] suffix = identifier.length == 0 ? new int[0] : identifier[random.nextInt(identifier.length)];
+			word = Arrays.copyOf(word, length + suffix.length);
+			System.arraycopy(suffix, 0, word, length, suffix.length);
+			return decode(word);
+		});
+	}
+
+	private List<String> decode(int[] word){
+		List<String> names = new ArrayList<String>(word.length);
+		for(int a : word)
+			names.add(compiled.inputs().name(a));
+		return names;
+	}
+
+	/*--------------------|
+	|     GENERATION      |
+	|--------------------*/
+
+	/**
+	 * This function collects the words of the suite whose longest prefix that is an access sequence, is the access sequence of the given state.
+	 * These words come from the state itself and from its ancestors in the access tree, for an ancestor at distance j the words
+	 * have to start with the last j inputs of the access sequence. Only the part after the access sequence is stored in the trie.
+	 */
+	private Trie generate(int state, int[] access, Method method){
+		Trie trie = new Trie();
+		int maxLength = extraStates + 1;
+		for(int[] w : characterizingSet)
+			maxLength = Math.max(maxLength, extraStates + 1 + w.length);
+		int[] middle = new int[extraStates+1];
+		for(int p = state, j = 0; p != -1 && j <= maxLength; p = parent[p], j++)
+			middles(trie, method, state, Arrays.copyOfRange(access, access.length - j, access.length), p, middle, 0);
+		return trie;
+	}
+
+	/**
+	 * This function adds the words of a middle and recursively of all its extensions over defined transitions.
+	 * @param owner, the state whose words are generated.
+	 * @param path, the inputs from the state the middle starts at to the owner, the words have to start with them.
+	 * @param s, the state reached by the middle.
+	 */
+	private void middles(Trie trie, Method method, int owner, int[] path, int s, int[] middle, int length){
+		int[][] suffixes = method == Method.W || length < middle.length ? characterizingSet : identifier(s);
+		if(suffixes.length == 0)
+			add(trie, owner, path, middle, length, null);
+		for(int[] suffix : suffixes)
+			add(trie, owner, path, middle, length, suffix);
+		if(length == middle.length)
+			return;
+		for(int a = 0; a < k; a++){
+			int t = compiled.step(s, a);
+			if(t < 0 || (length < path.length && a != path[length]))
+				continue;
+			middle[length] = a;
+			middles(trie, method, owner, path, t, middle, length+1);
+		}
+	}
+
+	/**
+	 * This function adds middle . suffix to the trie without the path, if it starts with the path and is not owned by a deeper state.
+	 */
+	private void add(Trie trie, int owner, int[] path, int[] middle, int length, int[] suffix){
+		int suffixLength = suffix == null ? 0 : suffix.length, j = path.length;
+		if(length + suffixLength < j)
+			return;
+		for(int i = length; i < j; i++)
+			if(suffix[i - length] != path[i])
+				return;
+		if(length + suffixLength > j){
+			int a = j < length ? middle[j] : suffix[j - length];
+			int t = compiled.step(owner, a);
+			if(t >= 0 && parent[t] == owner && parentInput[t] == a)
+				return;
+		}
+		trie.add(middle, length, suffix, j);
+	}
+
+	/**
+	 * @return the identifying words of a state, computed once per state.
+	 */
+	private int[][] identifier(int s){
+		int[][] words = identifiers.get(s);
+		if(words == null){
+			words = tree.identifyingWords(s).toArray(new int[0][]);
+			identifiers.set(s, words);
+		}
+		return words;
+	}
+
+	/**
+	 * Trie of words over input ids, stored as first child / next sibling arrays.
+	 */
+	private static class Trie {
+		private int[] input = new int[64], firstChild = new int[64], nextSibling = new int[64];
+		private boolean[] terminal = new boolean[64];
+		private int size = 1;
+
+		Trie(){
+			firstChild[0] = nextSibling[0] = -1;
+		}
+
+		/**
+		 * This function adds prefix[0..length) followed by suffix, without the first skip inputs.
+		 */
+		void add(int[] prefix, int length, int[] suffix, int skip){
+			int v = 0;
+			for(int i = skip; i < length; i++)
+				v = child(v, prefix[i]);
+			if(suffix != null)
+				for(int i = Math.max(0, skip - length); i < suffix.length; i++)
+					v = child(v, suffix[i]);
+			terminal[v] = true;
+		}
+
+		private int child(int v, int a){
+			for(int c = firstChild[v]; c != -1; c = nextSibling[c])
+				if(input[c] == a)
+					return c;
+			if(size == input.length){
+				input = Arrays.copyOf(input, size*2);
+				firstChild = Arrays.copyOf(firstChild, size*2);
+				nextSibling = Arrays.copyOf(nextSibling, size*2);
+				terminal = Arrays.copyOf(terminal, size*2);
+			}
+			int c = size++;
+			input[c] = a;
+			firstChild[c] = -1;
+			nextSibling[c] = firstChild[v];
+			firstChild[v] = c;
+			return c;
+		}
+
+		/**
+		 * @return an iterator over the prefix followed by every word in the trie (or only the leaves) in depth first order.
+		 */
+		Iterator<int[]> words(int[] prefix, boolean leavesOnly){
+			return new Iterator<int[]>(){
+				private int[] stack = new int[16], depths = new int[16], path = new int[16];
+				private int top = push(0, 0, 0);
+				private int[] next = advance();
+
+				private int push(int top, int v, int depth){
+					if(top == stack.length){
+						stack = Arrays.copyOf(stack, top*2);
+						depths = Arrays.copyOf(depths, top*2);
+					}
+					stack[top] = v;
+					depths[top] = depth;
+					return top + 1;
+				}
+
+				private int[] advance(){
+					while(top > 0){
+						int v = stack[--top], d = depths[top];
+						if(v != 0){
+							if(d > path.length)
+								path = Arrays.copyOf(path, path.length*2);
+							path[d-1] = input[v];
+						}
+						for(int c = firstChild[v]; c != -1; c = nextSibling[c])
+							top = push(top, c, d+1);
+						if(terminal[v] && (!leavesOnly || firstChild[v] == -1)){
+							int[] word = Arrays.copyOf(prefix, prefix.length + d);
+							System.arraycopy(path, 0, word, prefix.length, d);
+							return word;
+						}
+					}
+					return null;
+				}
+
+				public boolean hasNext(){
+					return next != null;
+				}
+
+				public int[] next(){
+					if(next == null)
+						throw new NoSuchElementException();
+					int[] word = next;
+					next = advance();
+					return word;
+				}
+			};
+		}
+	}
+}
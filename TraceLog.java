@@ -0,0 +1,354 @@
+package convertion.model;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class ingests trace logs of the system under test and annotates a Model with them.
+ * A log contains one trace per line, every trace starts in the start state of the model.
+ * A trace is a list of steps separated by spaces, tabs, commas or semicolons, where every step is "input/output" or just "input".
+ * Everything after a '#' is a comment, empty lines are skipped. Example:
+ *
+ *	# login, then logout
+ *	login/ok logout/ok
+ *	login/ok, login/error
+ *
+ * The log is memory mapped in windows and tokenised on the bytes, symbols are looked up in hash tables of the UTF-8 encoded
+ * inputs and outputs of the compiled model, so no strings are created for conforming traces.
+ * Every step that matches the model adds to the calls of its transition. The counts are merged into the transitions before every
+ * progress report and when the ingestion stops (also on an exception, without the line that was being ingested),
+ * so the counts in the model always belong to exactly the lines before the last reported offset, and an ingestion can be resumed from it.
+ * A trace is non-conforming from its first step with an unknown or undefined input or an unexpected output,
+ * the rest of such a trace is skipped.
+ * Changes to the model after construction are not reflected, create a new instance instead.
+ * @author Gijs van der Meijde
+ */
+public class TraceLog {
+	private static final long WINDOW_SIZE = 1L << 28;
+	private static final long PROGRESS_INTERVAL = 1000000000L; /* Nanoseconds between progress reports */
+	private static final int UNKNOWN = -1;
+
+	/**
+	 * Listener for the progress of an ingestion, both functions do nothing by default.
+	 */
+	public interface Listener {
+		/**
+		 * This function is called about once a second and when the log is read.
+		 * @param offset, the offset of the first line that was not ingested yet.
+		 * @param records, the amount of traces ingested so far.
+		 * @param recordsPerSecond, the average amount of traces ingested per second.
+		 */
+		default void progress(long offset, long records, double recordsPerSecond){}
+
+		/**
+		 * This function is called for every non-conforming trace.
+		 * @param offset, the offset of the line of the trace.
+		 * @param step, the position of the first step that does not conform to the model.
+		 * @param input, the input of the step.
+		 * @param expected, the output the model gives on the input, or null if the input is unknown or undefined in the reached state.
+		 * @param actual, the output in the log, or null if the step has no output.
+		 */
+		default void nonConforming(long offset, int step, String input, String expected, String actual){}
+	}
+
+	/**
+	 * Totals of an ingestion.
+	 */
+	public static class Result {
+		public final long records, steps, nonConforming, offset;
+
+		private Result(long records, long steps, long nonConforming, long offset){
+			this.records = records;
+			this.steps = steps;
+			this.nonConforming = nonConforming;
+			this.offset = offset;
+		}
+
+		public String toString(){
+			return String.format("%d traces, %d steps, %d non-conforming, ingested up to byte %d", records, steps, nonConforming, offset);
+		}
+	}
+
+	private final CompiledModel compiled;
+	private final Symbols inputs, outputs;
+
+	private MappedByteBuffer window;
+	private long windowOffset;
+	private long records, steps, nonConforming;
+	private long[] calls;
+	private long done;	/* Offset after the last line that was ingested completely */
+	private int[] lineCells = new int[64];	/* Cells counted for the line that is being ingested */
+	private int lineSteps;
+
+	/**
+	 * Constructor.
+	 * @param m, the model to annotate, it needs a start state.
+	 */
+	public TraceLog(Model m){
+		if(m.startState() == null)
+			throw new IllegalArgumentException("Start state not set!");
+		this.compiled = m.compile();
+		this.inputs = new Symbols(compiled.inputs());
+		this.outputs = new Symbols(compiled.outputs());
+	}
+
+	/**
+	 * This function ingests a whole log.
+	 * @param file, the log.
+	 * @param listener, receives progress and non-conforming traces, may be null.
+	 * @return the totals, offset is the size of the file.
+	 * @throws IOException when the file could not be read, or contains a line longer than the mapped window.
+	 */
+	public Result ingest(Path file, Listener listener) throws IOException{
+		return ingest(file, 0, listener);
+	}
+
+	/**
+	 * This function ingests a log from the given offset, to resume an earlier ingestion use the offset it reported.
+	 * If the offset is not at the start of a line, the ingestion starts at the next line.
+	 * @param file, the log.
+	 * @param offset, the offset in bytes to start at.
+	 * @param listener, receives progress and non-conforming traces, may be null.
+	 * @return the totals of this ingestion, offset is the size of the file.
+	 * @throws IOException when the file could not be read, or contains a line longer than the mapped window.
+	 */
+	public Result ingest(Path file, long offset, Listener listener) throws IOException{
+		if(listener == null)
+			listener = new Listener(){};
+		records = steps = nonConforming = 0;
+		calls = new long[compiled.stateCount() * compiled.inputCount()];
+		done = offset;
+		lineSteps = 0;
+		long startTime = System.nanoTime(), lastReport = startTime;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long size = channel.size();
+			if(offset > 0 && offset < size){
+				map(channel, offset - 1, 1);
+				if(window.get(0) != '\n')
+					offset = skipLine(channel, offset, size);
+				done = offset;
+			}
+			while(offset < size){
+				long length = Math.min(WINDOW_SIZE, size - offset);
+				map(channel, offset, length);
+				int end = (int) length;
+				if(offset + length < size){
+					//Only complete lines are ingested from this window, the last one starts the next window.
+					while(end > 0 && window.get(end-1) != '\n')
+						end--;
+					if(end == 0)
+						throw new IOException("Line at byte "+offset+" is longer than "+WINDOW_SIZE+" bytes.");
+				}
+				for(int p = 0; p < end; ){
+					p = line(p, end, listener);
+					done = offset + p;
+					lineSteps = 0;
+					if((records & 4095) == 0 && System.nanoTime() - lastReport >= PROGRESS_INTERVAL){
+						lastReport = System.nanoTime();
+						merge();
+						listener.progress(done, records, rate(records, startTime));
+					}
+				}
+				offset += end;
+			}
+			merge();
+			done = Math.max(offset, size);
+			listener.progress(done, records, rate(records, startTime));
+			return new Result(records, steps, nonConforming, done);
+		}catch(IOException | RuntimeException e){
+			//The counts of the complete lines are kept, and the offset to resume from is reported.
+			merge();
+			try{
+				listener.progress(done, records, rate(records, startTime));
+			}catch(RuntimeException r){
+				e.addSuppressed(r);
+			}
+			throw e;
+		}finally{
+			merge();
+			window = null;
+			calls = null;
+		}
+	}
+
+	/**
+	 * This function ingests the trace on the line starting at p.
+	 * @return the position after the line.
+	 */
+	private int line(int p, int end, Listener listener){
+		int state = compiled.startState(), inputCount = compiled.inputCount(), step = 0;
+		boolean conforming = true;
+		long lineOffset = windowOffset + p;
+		while(p < end){
+			byte b = window.get(p);
+			if(b == '\n'){
+				p++;
+				break;
+			}
+			if(b == '#'){
+				while(p < end && window.get(p) != '\n')
+					p++;
+				continue;
+			}
+			if(separator(b)){
+				p++;
+				continue;
+			}
+			int start = p, slash = -1;
+			for(; p < end; p++){
+				b = window.get(p);
+				if(b == '\n' || b == '#' || separator(b))
+					break;
+				if(b == '/' && slash < 0)
+					slash = p;
+			}
+			if(conforming){
+				int input = inputs.get(window, start, slash < 0 ? p : slash);
+				int next = compiled.step(state, input);
+				int output = slash < 0 ? UNKNOWN : outputs.get(window, slash+1, p);
+				if(next < 0 || (slash >= 0 && output != compiled.output(state, input))){
+					conforming = false;
+					nonConforming++;
+					listener.nonConforming(lineOffset, step, text(start, slash < 0 ? p : slash),
+							next < 0 ? null : compiled.outputs().name(compiled.output(state, input)), slash < 0 ? null : text(slash+1, p));
+				}else{
+					int cell = state * inputCount + input;
+					calls[cell]++;
+					if(lineSteps == lineCells.length)
+						lineCells = Arrays.copyOf(lineCells, lineSteps*2);
+					lineCells[lineSteps++] = cell;
+					steps++;
+					state = next;
+				}
+			}
+			step++;
+		}
+		if(step > 0)
+			records++;
+		return p;
+	}
+
+	private static boolean separator(byte b){
+		return b == ' ' || b == '\t' || b == ',' || b == ';' || b == '\r';
+	}
+
+	/**
+	 * This function decodes bytes of the window, only used to report non-conforming traces.
+	 */
+	private String text(int from, int to){
+		byte[] bytes = new byte[to - from];
+		for(int i = from; i < to; i++)
+			bytes[i - from] = window.get(i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void map(FileChannel channel, long offset, long length) throws IOException{
+		this.window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		this.windowOffset = offset;
+	}
+
+	/**
+	 * This function finds the offset after the first newline at or after the given offset.
+	 */
+	private long skipLine(FileChannel channel, long offset, long size) throws IOException{
+		while(offset < size){
+			long length = Math.min(WINDOW_SIZE, size - offset);
+			map(channel, offset, length);
+			for(int i = 0; i < length; i++)
+				if(window.get(i) == '\n')
+					return offset + i + 1;
+			offset += length;
+		}
+		return size;
+	}
+
+	private static double rate(long records, long startTime){
+		long elapsed = System.nanoTime() - startTime;
+		return elapsed <= 0 ? 0 : records * 1e9 / elapsed;
+	}
+
+	/**
+	 * This function adds the counted steps of the complete lines to the calls of the transitions, and clears the counts.
+	 * The steps of a line that was not ingested completely are not added.
+	 */
+	private void merge(){
+		if(calls == null)
+			return;
+		for(int i = 0; i < lineSteps; i++)
+			calls[lineCells[i]]--;
+		lineSteps = 0;
+		int inputCount = compiled.inputCount();
+		for(int cell = 0; cell < calls.length; cell++){
+			if(calls[cell] > 0){
+				Transition t = compiled.transition(cell / inputCount, cell % inputCount);
+				t.calls = (int) Math.min(Integer.MAX_VALUE, t.calls + calls[cell]);
+				t.isUsed = true;
+				calls[cell] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Open addressing hash table from the UTF-8 bytes of the symbols of a SymbolTable to their ids.
+	 */
+	private static class Symbols {
+		private final byte[][] keys;
+		private final int[] hashes, ids;
+
+		Symbols(SymbolTable table){
+			int capacity = Integer.highestOneBit(Math.max(table.size(), 1) * 4);
+			this.keys = new byte[capacity][];
+			this.hashes = new int[capacity];
+			this.ids = new int[capacity];
+			for(int id = 0; id < table.size(); id++){
+				byte[] key = table.name(id).getBytes(StandardCharsets.UTF_8);
+				int h = hash(key), slot = mix(h) & (capacity-1);
+				while(keys[slot] != null)
+					slot = (slot+1) & (capacity-1);
+				keys[slot] = key;
+				hashes[slot] = h;
+				ids[slot] = id;
+			}
+		}
+
+		/**
+		 * @return the id of the symbol in bytes [from, to) of the buffer, or UNKNOWN.
+		 */
+		int get(MappedByteBuffer buffer, int from, int to){
+			int h = 0;
+			for(int i = from; i < to; i++)
+				h = 31*h + buffer.get(i);
+			int mask = keys.length-1;
+			for(int slot = mix(h) & mask; keys[slot] != null; slot = (slot+1) & mask)
+				if(hashes[slot] == h && equals(keys[slot], buffer, from, to))
+					return ids[slot];
+			return UNKNOWN;
+		}
+
+		private static boolean equals(byte[] key, MappedByteBuffer buffer, int from, int to){
+			if(key.length != to - from)
+				return false;
+			for(int i = 0; i < key.length; i++)
+				if(key[i] != buffer.get(from+i))
+					return false;
+			return true;
+		}
+
+		private static int hash(byte[] key){
+			int h = 0;
+			for(byte b : key)
+				h = 31*h + b;
+			return h;
+		}
+
+		private static int mix(int h){
+			h *= 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package convertion.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * This class replays batches of input words through a Model to record coverage in Transition.calls and Transition.isUsed.
+ * The model is compiled once and the words are replayed in batches on a ForkJoinPool.
+ * Every worker thread counts the steps it takes in its own array (one counter per state and input of the compiled model),
+ * the arrays are merged into the transitions after all words are replayed, so the transitions are never written concurrently.
+ * Words are read from the given iterator while replaying and only a bounded amount of batches is in flight,
+ * paths are handed to the listener one word at a time and are not kept.
+ * A word is replayed until its first input that is unknown or undefined in the reached state, that position is the divergence point.
+ * Changes to the model after construction are not reflected, create a new instance instead.
+ * @author Gijs van der Meijde
+ */
+public class TraceReplay {
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Listener that receives the result of every replayed word.
+	 * It is called from the worker threads, in no particular order, so it has to be thread safe.
+	 */
+	public interface Listener {
+		/**
+		 * @param index, the position of the word in the replayed words.
+		 * @param word, the word.
+		 * @param path, the transitions taken (up to the divergence point).
+		 * @param divergence, the position of the first input that could not be taken, or -1 if the whole word was replayed.
+		 */
+		void replayed(long index, List<String> word, List<Transition> path, int divergence);
+	}
+
+	/**
+	 * Totals of a replay.
+	 */
+	public static class Result {
+		public final long words, steps, diverged;
+
+		private Result(long words, long steps, long diverged){
+			this.words = words;
+			this.steps = steps;
+			this.diverged = diverged;
+		}
+
+		public String toString(){
+			return String.format("%d words, %d steps, %d diverged", words, steps, diverged);
+		}
+	}
+
+	private final CompiledModel compiled;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor that replays on the common ForkJoinPool.
+	 * @param m, the model to replay words through, it needs a start state.
+	 */
+	public TraceReplay(Model m){
+		this(m, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor.
+	 * @param m, the model to replay words through, it needs a start state.
+	 * @param pool, the pool to replay on.
+	 */
+	public TraceReplay(Model m, ForkJoinPool pool){
+		if(m.startState() == null)
+			throw new IllegalArgumentException("Start state not set!");
+		this.compiled = m.compile();
+		this.pool = pool;
+	}
+
+	/**
+	 * This function replays the words and adds the amount of times every transition was taken to its calls.
+	 * @param words, the words (lists of input names).
+	 * @param listener, receives the path or divergence point of every word, may be null.
+	 * @return the totals of the replay.
+	 */
+	public Result replay(Iterable<? extends List<String>> words, Listener listener){
+		return replay(words.iterator(), listener);
+	}
+
+	/**
+	 * This function replays the words and adds the amount of times every transition was taken to its calls.
+	 * The stream is consumed sequentially, the words are replayed in parallel.
+	 * @param words, the words (lists of input names).
+	 * @param listener, receives the path or divergence point of every word, may be null.
+	 * @return the totals of the replay.
+	 */
+	public Result replay(Stream<? extends List<String>> words, Listener listener){
+		return replay(words.iterator(), listener);
+	}
+
+	/**
+	 * This function replays the words and adds the amount of times every transition was taken to its calls.
+	 * @param words, the words (lists of input names).
+	 * @param listener, receives the path or divergence point of every word, may be null.
+	 * @return the totals of the replay.
+	 */
+	public Result replay(Iterator<? extends List<String>> words, Listener listener){
+		Run run = new Run(listener);
+		Deque<ForkJoinTask<?>> pending = new ArrayDeque<ForkJoinTask<?>>();
+		int maxPending = pool.getParallelism() * 4;
+		long index = 0;
+		while(words.hasNext()){
+			List<List<String>> batch = new ArrayList<List<String>>(BATCH_SIZE);
+			while(batch.size() < BATCH_SIZE && words.hasNext())
+				batch.add(words.next());
+			long first = index;
+			index += batch.size();
+			if(pending.size() >= maxPending)
+				pending.poll().join();
+			pending.add(pool.submit(() -> run.replay(first, batch)));
+		}
+		while(!pending.isEmpty())
+			pending.poll().join();
+		run.merge();
+		return new Result(index, run.steps.sum(), run.diverged.sum());
+	}
+
+	/**
+	 * The state of a single replay: the listener, the totals and the counter arrays of the worker threads.
+	 */
+	private class Run {
+		private final Listener listener;
+		private final LongAdder steps = new LongAdder(), diverged = new LongAdder();
+		private final Map<Thread,long[]> counters = new ConcurrentHashMap<Thread,long[]>();
+
+		Run(Listener listener){
+			this.listener = listener;
+		}
+
+		void replay(long first, List<List<String>> batch){
+			long[] calls = counters.computeIfAbsent(Thread.currentThread(), t -> new long[compiled.stateCount() * compiled.inputCount()]);
+			int inputs = compiled.inputCount();
+			long taken = 0, failed = 0;
+			for(int w = 0; w < batch.size(); w++){
+				List<String> word = batch.get(w);
+				List<Transition> path = listener == null ? null : new ArrayList<Transition>(word.size());
+				int state = compiled.startState(), divergence = -1, i = 0;
+				for(String name : word){
+					int input = compiled.inputs().get(name), next = compiled.step(state, input);
+					if(next < 0){
+						divergence = i;
+						break;
+					}
+					calls[state * inputs + input]++;
+					if(path != null)
+						path.add(compiled.transition(state, input));
+					state = next;
+					i++;
+				}
+				taken += divergence < 0 ? word.size() : divergence;
+				if(divergence >= 0)
+					failed++;
+				if(listener != null)
+					listener.replayed(first + w, word, Collections.unmodifiableList(path), divergence);
+			}
+			steps.add(taken);
+			diverged.add(failed);
+		}
+
+		/**
+		 * This function adds the counters of all worker threads to the transitions.
+		 */
+		void merge(){
+			int inputs = compiled.inputCount();
+			for(long[] calls : counters.values()){
+				for(int cell = 0; cell < calls.length; cell++){
+					if(calls[cell] > 0){
+						Transition t = compiled.transition(cell / inputs, cell % inputs);
+						t.calls = (int) Math.min(Integer.MAX_VALUE, t.calls + calls[cell]);
+						t.isUsed = true;
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,59 +1,188 @@
 package convertion.model;
 
-public class Transition extends Model{
-	//public int from, to;
-	public String input, output;
-	public String orgFrom, orgTo;
-	public String label;
+/**
+ * This class represents a single transition of a Model.
+ * State names, inputs and outputs are interned in a symbol table shared by all transitions, so a transition only holds ints.
+ * The label ("input / output") is only built when it is requested.
+ *
+ * The symbol table is global and only grows: every state name, input and output of every transition ever created
+ * stays on the heap until the JVM exits, also after its models are gone. This is deliberate, the ids have to stay valid
+ * for every transition that may still exist, and a transition holding four ints is what keeps large models small.
+ * Processes that load many unrelated models with distinct state names should expect the table to grow with all of them.
+ * @author Gijs van der Meijde
+ */
+public class Transition {
+	static final SymbolTable SYMBOLS = new SymbolTable(); /* Interned state names, inputs and outputs of all transitions, never released */
+	
+	private final int from, to;
+	private final int input, output; /* -1 if the label could not be split in an input and output, output is also -1 for a null output */
+	private String label; /* Built on request, unless the label could not be split */
 	
 	public boolean isUsed = false; //Used for adding trace information.
 	public int calls = 0;	//Used for adding trace information.
 	
+	/**
+	 * Constructor for a transition with an input and output.
+	 * A null input becomes the input "null" (so the label is "null / output"), a null output stays null (so the label is only the input).
+	 */
 	public Transition(String from, String to, String input, String output){
-		this(from, to, input+" / "+output);
-		this.input = input;
-		this.output = output;
+		this.from = SYMBOLS.intern(from);
+		this.to = SYMBOLS.intern(to);
+		this.input = SYMBOLS.intern(String.valueOf(input));
+		this.output = output == null ? -1 : SYMBOLS.intern(output);
 	}
 	
 	public Transition(int from, int to, String input, String output){
-		this(from, to, input+" / "+output);
-		this.input = input;
-		this.output = output;
+		this(from+"", to+"", input, output);
 	}
 	
 	public Transition(int from, int to, String label){
-		//this.from = from;
-		//this.to = to;
-		this.label = label;
-		this.orgFrom = from+"";
-		this.orgTo = to+"";
-		setInOutput(label);
-		//generateName();
+		this(from+"", to+"", label);
 	}
 	
 	public Transition(String from, String to, String label){
-		this.orgFrom = from;
-		this.orgTo = to;
-		this.label = label;
-		setInOutput(label);
-		//this.from = Integer.parseInt(from.replaceAll("\\D+",""));
-		//this.to = Integer.parseInt(to.replaceAll("\\D+",""));
-		//generateName();
+		this.from = SYMBOLS.intern(from);
+		this.to = SYMBOLS.intern(to);
+		int split = label == null ? -1 : label.indexOf('/');
+		if(split >= 0){
+			this.input = SYMBOLS.intern(label.substring(0, split).trim());
+			this.output = SYMBOLS.intern(label.substring(split+1).trim());
+			if(!hasLabel(label))
+				this.label = label;
+		}else{
+			this.input = -1;
+			this.output = -1;
+			this.label = label;
+		}
+	}
+	
+	private Transition(int from, int to, int input, int output){
+		this.from = from;
+		this.to = to;
+		this.input = input;
+		this.output = output;
+	}
+	
+	/**
+	 * This function creates a transition from already interned symbol ids.
+	 * @param from, the id of the origin state's name.
+	 * @param to, the id of the goal state's name.
+	 * @param input, the id of the input.
+	 * @param output, the id of the output.
+	 * @return the new transition.
+	 */
+	static Transition of(int from, int to, int input, int output){
+		return new Transition(from, to, input, output);
 	}
 	
 	public Transition(Transition t){
-		this(t.orgFrom, t.orgTo, t.input, t.output);
+		this.from = t.from;
+		this.to = t.to;
+		this.input = t.input;
+		this.output = t.output;
 		this.label = t.label;
 	}
 	
-	public String toString(){
+	/**
+	 * @return the name of the origin state.
+	 */
+	public String orgFrom(){
+		return SYMBOLS.name(from);
+	}
+	
+	/**
+	 * @return the name of the goal state.
+	 */
+	public String orgTo(){
+		return SYMBOLS.name(to);
+	}
+	
+	/**
+	 * @return the input, or null if the label has no input / output form.
+	 */
+	public String input(){
+		return SYMBOLS.name(input);
+	}
+	
+	/**
+	 * @return the output, or null if the label has no input / output form or the output is null.
+	 */
+	public String output(){
+		return SYMBOLS.name(output);
+	}
+	
+	/**
+	 * This function returns the input of the transition, as it is put in Model.functions.
+	 * @return the input, or the part of the label before the '/' if the label has no input / output form, or "" if there is no label.
+	 */
+	public String function(){
+		if(input >= 0)
+			return input();
+		if(label == null)
+			return "";
+		int split = label.indexOf('/');
+		return (split < 0 ? label : label.substring(0, split)).trim();
+	}
+	
+	/**
+	 * @return the interned id of the origin state's name.
+	 */
+	public int fromId(){
+		return from;
+	}
+	
+	/**
+	 * @return the interned id of the goal state's name.
+	 */
+	public int toId(){
+		return to;
+	}
+	
+	/**
+	 * @return the interned id of the input, or -1 if there is none.
+	 */
+	public int inputId(){
+		return input;
+	}
+	
+	/**
+	 * @return the interned id of the output, or -1 if there is none.
+	 */
+	public int outputId(){
+		return output;
+	}
+	
+	/**
+	 * This function returns the label of the transition, building it from the input and output the first time it is requested.
+	 * A transition with an input and a null output has only the input as label.
+	 * @return the label of the transition.
+	 */
+	public String label(){
+		if(label == null && input >= 0)
+			label = output < 0 ? input() : input()+" / "+output();
 		return label;
 	}
 	
-	private void setInOutput(String label){
-		if(label != null && label.contains("/")){
-			this.input = label.split("/")[0].trim();
-			this.output = label.split("/")[1].trim();
-		}
+	/**
+	 * This function checks if the transition has the given label, without building the label.
+	 * @param name, the label to compare with.
+	 * @return true if the label of the transition equals name, false otherwise.
+	 */
+	public boolean hasLabel(String name){
+		if(label != null || input < 0)
+			return name == null ? label == null : name.equals(label);
+		String in = input();
+		if(output < 0)
+			return in.equals(name);
+		String out = output();
+		return name != null
+				&& name.length() == in.length() + out.length() + 3
+				&& name.startsWith(in)
+				&& name.startsWith(" / ", in.length())
+				&& name.endsWith(out);
+	}
+	
+	public String toString(){
+		return label();
 	}
 }
@@ -0,0 +1,104 @@
+package convertion.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * This class finds routes through a Model where every transition has a weight given by a cost function.
+ * It uses Dijkstra's algorithm (or A* when a heuristic is given) on a primitive indexed heap,
+ * the scratch arrays are allocated once so repeated queries only allocate the returned route.
+ * The cost function is evaluated during the search, so it may depend on trace information such as Transition.calls.
+ * Changes to the states of the model after construction are not supported, create a new instance instead.
+ * @author Gijs van der Meijde
+ */
+public class WeightedRoutes {
+	private final Model model;
+	private final Dijkstra dijkstra;
+	private int source = -1;
+
+	/**
+	 * Constructor for weighted routes through a model.
+	 * @param m, the model.
+	 * @param cost, the weight of a transition (>= 0, positive infinity to exclude the transition).
+	 */
+	public WeightedRoutes(Model m, ToDoubleFunction<Transition> cost){
+		this.model = m;
+		this.dijkstra = new Dijkstra(new Dijkstra.Graph(){
+			public int size(){ return m.stateCount(); }
+			public int degree(int node){ return m.outDegree(node); }
+			public int target(int node, int i){ return m.target(node, i); }
+			public double weight(int node, int i){ return cost.applyAsDouble(m.transition(node, i)); }
+		});
+	}
+
+	/**
+	 * This function returns the cheapest route between 2 states, the search stops as soon as the goal is reached.
+	 * @param from, the name of the state to start.
+	 * @param to, the name of the state to reach.
+	 * @return the transitions of the route, or null if there is none.
+	 */
+	public List<Transition> route(String from, String to){
+		return route(from, to, null);
+	}
+
+	/**
+	 * This function returns the cheapest route between 2 states using A*.
+	 * @param from, the name of the state to start.
+	 * @param to, the name of the state to reach.
+	 * @param heuristic, an admissible estimate of the remaining cost from a state (given by name) to the goal.
+	 * @return the transitions of the route, or null if there is none.
+	 */
+	public List<Transition> route(String from, String to, ToDoubleFunction<String> heuristic){
+		int goal = model.indexOf(to);
+		source = -1;
+		if(!dijkstra.search(model.indexOf(from), goal, heuristic == null ? null : s -> heuristic.applyAsDouble(model.stateName(s))))
+			return null;
+		return routeTo(model.indexOf(from), goal);
+	}
+
+	/**
+	 * This function computes the cheapest routes from the given state to all other states.
+	 * Use distance and routeTo to query the result, until the next search (route or from) reuses the scratch arrays.
+	 * @param from, the name of the state to start.
+	 * @return the current object.
+	 */
+	public WeightedRoutes from(String from){
+		source = model.indexOf(from);
+		dijkstra.search(source, -1, null);
+		return this;
+	}
+
+	/**
+	 * @param to, the name of a state.
+	 * @return the cost of the cheapest route from the last source to the state, or positive infinity if it cannot be reached.
+	 */
+	public double distance(String to){
+		checkSource();
+		return dijkstra.distance(model.indexOf(to));
+	}
+
+	/**
+	 * @param to, the name of a state.
+	 * @return the transitions of the cheapest route from the last source to the state, or null if it cannot be reached.
+	 */
+	public List<Transition> routeTo(String to){
+		checkSource();
+		int goal = model.indexOf(to);
+		return dijkstra.reached(goal) ? routeTo(source, goal) : null;
+	}
+
+	private List<Transition> routeTo(int from, int goal){
+		List<Transition> route = new ArrayList<Transition>();
+		for(int s = goal; s != from; s = dijkstra.parent(s))
+			route.add(model.transition(dijkstra.parent(s), dijkstra.parentEdge(s)));
+		Collections.reverse(route);
+		return route;
+	}
+
+	private void checkSource(){
+		if(source < 0)
+			throw new IllegalStateException("Call from(state) before querying single source routes.");
+	}
+}